@@ -0,0 +1,139 @@
+package com.karasov.transfer.load;
+
+import com.karasov.transfer.TransferApplication;
+import com.karasov.transfer.models.Request;
+import com.karasov.transfer.repository.TransferRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий драйвер нагрузочных сравнений: поднимает приложение с заданными свойствами на случайном
+ * порту и выполняет пары запросов {@code /transfer} + {@code /confirmOperation} при заданном
+ * числе одновременных запросов, выводя пропускную способность и перцентили задержки.
+ * Допуск запросов и скоростные правила отключены: драйвер переводит между двумя картами
+ * и иначе упирался бы в ограничения по карте.
+ */
+final class TransferLoadDriver {
+
+    private static final String[] CARDS = {"1111111111111111", "2222222222222222"};
+    private static final String[] VALID_TILL = {"12/31", "12/32"};
+    private static final String[] CVV = {"111", "222"};
+
+    private TransferLoadDriver() {
+    }
+
+    /**
+     * Поднимает приложение, выполняет нагрузку и останавливает его.
+     *
+     * @param mode        название режима для вывода
+     * @param concurrency количество одновременных запросов
+     * @param operations  количество пар запросов
+     * @param properties  дополнительные свойства приложения
+     */
+    static void runMode(String mode, int concurrency, int operations, String... properties)
+            throws IOException, InterruptedException {
+        Path journal = Files.createTempDirectory("transfer-journal");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(TransferApplication.class)
+                .properties(
+                        "server.port=0",
+                        "transfer.journal.directory=" + journal,
+                        "transfer.admission.enabled=false",
+                        "transfer.velocity.enabled=false",
+                        "logging.level.root=WARN",
+                        "logging.level.com.karasov.transfer=WARN")
+                .properties(properties)
+                .run();
+        try {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            run(mode, port, context.getBean(TransferRepository.class), concurrency, operations);
+        } finally {
+            context.close();
+            FileSystemUtils.deleteRecursively(journal);
+        }
+    }
+
+    private static void run(String mode, int port, TransferRepository transferRepository,
+                            int concurrency, int operations) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()))
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        URI transfer = URI.create("http://localhost:" + port + "/transfer");
+        URI confirm = URI.create("http://localhost:" + port + "/confirmOperation");
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[operations];
+
+        long started = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            inFlight.acquire();
+            int from = i & 1;
+            int index = i;
+            long operationStarted = System.nanoTime();
+            client.sendAsync(post(transfer, transferBody(from)), HttpResponse.BodyHandlers.ofString())
+                    .thenCompose(response -> {
+                        String operationId = response.body().replaceAll("\\D", "");
+                        return client.sendAsync(
+                                post(confirm, "{\"operationId\":\"" + operationId + "\",\"code\":\""
+                                        + verificationCode(transferRepository, operationId) + "\"}"),
+                                HttpResponse.BodyHandlers.discarding());
+                    })
+                    .whenComplete((response, error) -> {
+                        if (error != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[index] = System.nanoTime() - operationStarted;
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(concurrency);
+        long elapsed = System.nanoTime() - started;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-8s concurrency=%d operations=%d throughput=%.0f ops/s p50=%.1f ms p99=%.1f ms failures=%d%n",
+                mode, concurrency, operations,
+                operations / (elapsed / 1e9),
+                latencies[operations / 2] / 1e6,
+                latencies[(int) (operations * 0.99)] / 1e6,
+                failures.get());
+    }
+
+    /**
+     * Код берется из хранилища ожидающих запросов приложения, запущенного в том же процессе,
+     * вместо SMS.
+     */
+    private static String verificationCode(TransferRepository transferRepository, String operationId) {
+        Request request = operationId.isEmpty() ? null : transferRepository.getRequest(Long.parseLong(operationId));
+        return request == null ? "" : request.getVerificationCode();
+    }
+
+    private static HttpRequest post(URI uri, String body) {
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String transferBody(int from) {
+        int to = 1 - from;
+        return "{\"cardFromNumber\":\"" + CARDS[from] + "\","
+                + "\"cardFromValidTill\":\"" + VALID_TILL[from] + "\","
+                + "\"cardFromCVV\":\"" + CVV[from] + "\","
+                + "\"cardToNumber\":\"" + CARDS[to] + "\","
+                + "\"amount\":{\"currency\":\"RUR\",\"value\":1}}";
+    }
+}
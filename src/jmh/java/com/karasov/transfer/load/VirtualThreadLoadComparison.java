@@ -0,0 +1,27 @@
+package com.karasov.transfer.load;
+
+/**
+ * Нагрузочное сравнение пула платформенных потоков Tomcat и режима виртуальных потоков.
+ * <p>
+ * Приложение поднимается дважды, с {@code spring.threads.virtual.enabled=false} и {@code true},
+ * и в каждом режиме выполняется одинаковое количество пар {@code /transfer} + {@code /confirmOperation}
+ * при заданном числе одновременных запросов. Подтверждение ожидает групповой фиксации журнала,
+ * то есть блокирует поток обработки запроса. Режим виртуальных потоков требует Java 21:
+ * <pre>
+ * ./mvnw -Pbenchmarks,java21 test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.karasov.transfer.load.VirtualThreadLoadComparison -Dexec.args="2000 100000"
+ * </pre>
+ * Аргументы: количество одновременных запросов (по умолчанию 2000) и количество пар запросов
+ * (по умолчанию 100000).
+ */
+public class VirtualThreadLoadComparison {
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        for (boolean virtual : new boolean[]{false, true}) {
+            TransferLoadDriver.runMode(virtual ? "virtual" : "platform", concurrency, operations,
+                    "spring.threads.virtual.enabled=" + virtual);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.karasov.transfer.load;
+
+/**
+ * Нагрузочное сравнение сервлетного стека (Spring MVC на Tomcat) и реактивного стека (WebFlux на Netty).
+ * <p>
+ * Приложение поднимается дважды, с {@code spring.main.web-application-type=servlet} и {@code reactive},
+ * и в каждом режиме выполняется одинаковое количество пар {@code /transfer} + {@code /confirmOperation}.
+ * Для сервлетного стека максимальное число соединений Tomcat поднимается до числа одновременных
+ * запросов, чтобы сравнение не упиралось в его ограничение по умолчанию:
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.karasov.transfer.load.WebStackLoadComparison -Dexec.args="10000 200000"
+ * </pre>
+ * Аргументы: количество одновременных запросов (по умолчанию 10000) и количество пар запросов
+ * (по умолчанию 200000). При 10000 соединений может потребоваться увеличить {@code ulimit -n}.
+ */
+public class WebStackLoadComparison {
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        TransferLoadDriver.runMode("servlet", concurrency, operations,
+                "spring.main.web-application-type=servlet",
+                "server.tomcat.max-connections=" + concurrency,
+                "server.tomcat.accept-count=" + concurrency);
+        TransferLoadDriver.runMode("reactive", concurrency, operations,
+                "spring.main.web-application-type=reactive");
+    }
+}
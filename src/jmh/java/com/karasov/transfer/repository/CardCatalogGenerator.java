@@ -0,0 +1,49 @@
+package com.karasov.transfer.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Генерирует файл каталога карт {@link CardCatalog} для проверки загрузки полного каталога:
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.karasov.transfer.repository.CardCatalogGenerator -Dexec.args="cards.bin 20000000"
+ * ./mvnw spring-boot:run -Dspring-boot.run.arguments=--transfer.catalog.file=cards.bin
+ * </pre>
+ * Номера карт идут подряд начиная с {@value #FIRST_CARD_NUMBER}, срок действия 12/30, CVV 123,
+ * баланс 10 000 рублей.
+ */
+public final class CardCatalogGenerator {
+
+    private static final long FIRST_CARD_NUMBER = 4_000_000_000_000_000L;
+    private static final int BATCH = 1 << 14;
+
+    private CardCatalogGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of(args.length > 0 ? args[0] : "cards.bin");
+        long count = args.length > 1 ? Long.parseLong(args[1]) : 10_000_000L;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH * CardCatalog.RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (long i = 0; i < count; i++) {
+                buffer.putLong(FIRST_CARD_NUMBER + i)
+                        .putLong(1_000_000L)
+                        .putInt(1230)
+                        .putInt(123);
+                if (!buffer.hasRemaining() || i == count - 1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        }
+        System.out.printf("Written %d cards to %s%n", count, file);
+    }
+}
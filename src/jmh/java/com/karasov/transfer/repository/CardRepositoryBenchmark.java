@@ -0,0 +1,88 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.models.Card;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение поиска карты в {@link CardRepositoryImpl} с прежним линейным перебором множества карт.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class CardRepositoryBenchmark {
+
+    private static final long FIRST_CARD_NUMBER = 4_000_000_000_000_000L;
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1000", "1000000", "10000000"})
+    public int cardCount;
+
+    private Set<Card> scanCards;
+    private CardRepositoryImpl repository;
+    private String[] stringKeys;
+    private long[] longKeys;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scanCards = new HashSet<>(cardCount * 2);
+        repository = new CardRepositoryImpl();
+        for (int i = 0; i < cardCount; i++) {
+            Card card = new Card(String.valueOf(FIRST_CARD_NUMBER + i), "1230", "123", 10_000L);
+            scanCards.add(card);
+            repository.addCard(card);
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        stringKeys = new String[LOOKUPS];
+        longKeys = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            longKeys[i] = FIRST_CARD_NUMBER + random.nextInt(cardCount);
+            stringKeys[i] = String.valueOf(longKeys[i]);
+        }
+    }
+
+    @Benchmark
+    public Card linearScan() {
+        String number = stringKeys[next()];
+        for (Card card : scanCards) {
+            if (card.getCardNumber().equals(number)) {
+                return card;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Card indexByString() {
+        return repository.getCardByNumber(stringKeys[next()]);
+    }
+
+    @Benchmark
+    public Card indexByLong() {
+        return repository.getCardByNumber(longKeys[next()]);
+    }
+
+    private int next() {
+        return cursor = (cursor + 1) & (LOOKUPS - 1);
+    }
+}
@@ -0,0 +1,111 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.models.Card;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность удержания и проведения перевода ({@link Card#hold(long)} и
+ * {@link TransferLedger#capture}) при конкурентных переводах в режиме {@code journaled}.
+ * <p>
+ * Один и тот же сценарий выполняется в 1, 2, 4 и 8 потоках, что показывает масштабирование
+ * по ядрам. Для другого количества потоков используется {@code randomPair} с параметром {@code -t}:
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.args="CaptureBenchmark.randomPair -t 16"
+ * </pre>
+ * При малом количестве карт переводы конкурируют за CAS балансов одних и тех же карт,
+ * при большом выполняются практически независимо. Журнал переводов в бенчмарке отключен.
+ * <p>
+ * {@code hotRecipient} моделирует карту продавца: все потоки переводят на одну карту со случайных карт,
+ * с распределенными зачислениями ({@code striped}) или с обычным полем баланса ({@code plain}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptureBenchmark {
+
+    private static final long FIRST_CARD_NUMBER = 4_000_000_000_000_000L;
+
+    @Param({"4", "100000"})
+    public int cardCount;
+
+    @Param({"plain", "striped"})
+    public String recipientCredits;
+
+    private Card[] cards;
+    private Card merchant;
+    private TransferLedger transferLedger;
+
+    @Setup
+    public void setUp() {
+        cards = new Card[cardCount];
+        for (int i = 0; i < cardCount; i++) {
+            cards[i] = new Card(String.valueOf(FIRST_CARD_NUMBER + i), "1230", "123", 100_000_000_000L);
+        }
+        merchant = new Card("5000000000000000", "1230", "123");
+        if ("striped".equals(recipientCredits)) {
+            merchant.stripeCredits();
+        }
+        transferLedger = TransferServiceFixture.ledger("journaled", TransferServiceFixture.NO_JOURNAL,
+                TransferServiceFixture.metrics(TransferServiceFixture.transferRepository()));
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public boolean randomPair(ThreadState state) {
+        Card from = cards[state.random.nextInt(cardCount)];
+        Card to = cards[state.random.nextInt(cardCount)];
+        return TransferServiceFixture.holdAndCapture(transferLedger, from, to, 100L);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean hotRecipient(ThreadState state) {
+        Card from = cards[state.random.nextInt(cardCount)];
+        return TransferServiceFixture.holdAndCapture(transferLedger, from, merchant, 100L);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1(ThreadState state) {
+        return randomPair(state);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean threads2(ThreadState state) {
+        return randomPair(state);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4(ThreadState state) {
+        return randomPair(state);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean threads8(ThreadState state) {
+        return randomPair(state);
+    }
+}
@@ -0,0 +1,100 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.TransferRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение пропускной способности режимов {@link TransferLedger}: атомарные изменения балансов в пуле потоков проведения без блокировок карт ({@code journaled}), через кольцевой буфер с одним писателем ({@code sequenced})
+ * и в шардах, владеющих картами ({@code sharded}, по одному шарду на процессор).
+ * <p>
+ * Измеряется удержание суммы и {@link TransferLedger#capture} целиком, включая ожидание результата.
+ * Журнал переводов отключен, поэтому сравнивается только проведение изменений балансов:
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.args="TransferLedgerBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferLedgerBenchmark {
+
+    private static final long FIRST_CARD_NUMBER = 4_000_000_000_000_000L;
+
+    @Param({"journaled", "sequenced", "sharded"})
+    public String mode;
+
+    @Param({"4", "100000"})
+    public int cardCount;
+
+    private Card[] cards;
+    private TransferLedger transferLedger;
+
+    @Setup
+    public void setUp() {
+        cards = new Card[cardCount];
+        for (int i = 0; i < cardCount; i++) {
+            cards[i] = new Card(String.valueOf(FIRST_CARD_NUMBER + i), "1230", "123", 100_000_000_000L);
+        }
+        TransferRepositoryImpl transferRepository = TransferServiceFixture.transferRepository();
+        TransferMetrics metrics = TransferServiceFixture.metrics(transferRepository);
+        transferLedger = TransferServiceFixture.ledger(mode, TransferServiceFixture.NO_JOURNAL, metrics);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (transferLedger instanceof SequencedTransferLedger sequenced) {
+            sequenced.close();
+        } else if (transferLedger instanceof ShardedTransferLedger sharded) {
+            sharded.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    private boolean randomPair(ThreadState state) {
+        Card from = cards[state.random.nextInt(cardCount)];
+        Card to = cards[state.random.nextInt(cardCount)];
+        return TransferServiceFixture.holdAndCapture(transferLedger, from, to, 100L);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1(ThreadState state) {
+        return randomPair(state);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4(ThreadState state) {
+        return randomPair(state);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean threads8(ThreadState state) {
+        return randomPair(state);
+    }
+}
@@ -0,0 +1,102 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.dto.ConfirmOperationDTO;
+import com.karasov.transfer.dto.RegisterStatusDto;
+import com.karasov.transfer.dto.RequestDto;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.CardRepositoryImpl;
+import com.karasov.transfer.repository.TransferJournal;
+import com.karasov.transfer.repository.TransferJournalImpl;
+import com.karasov.transfer.repository.TransferRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сквозной путь перевода через {@link TransferService}: регистрация запроса ({@code transfer})
+ * и регистрация с последующим подтверждением ({@code transferAndConfirm}).
+ * <p>
+ * Стоимость подтверждения равна разнице результатов двух бенчмарков. Параметр {@code journal}
+ * выбирает между отключенным журналом и {@link TransferJournalImpl} во временном каталоге.
+ * Хранилище ожидающих запросов пересоздается на каждой итерации, так как колесо таймеров
+ * вне контекста Spring не запускается.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TransferServiceBenchmark {
+
+    private static final String CARD_FROM = "4000000000000000";
+    private static final String CARD_TO = "1111111111111111";
+
+    @Param({"none", "mapped"})
+    public String journal;
+
+    private CardRepositoryImpl cardRepository;
+    private TransferJournal transferJournal;
+    private Path journalDirectory;
+    private TransferRepositoryImpl transferRepository;
+    private TransferService transferService;
+    private RequestDto requestDto;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        cardRepository = new CardRepositoryImpl();
+        cardRepository.addCard(new Card(CARD_FROM, "1239", "123", 100_000_000_000_000_000L));
+        if ("mapped".equals(journal)) {
+            journalDirectory = Files.createTempDirectory("transfer-journal");
+            transferJournal = new TransferJournalImpl(
+                    cardRepository, journalDirectory, DataSize.ofMegabytes(64), 256, Duration.ofMillis(1));
+        } else {
+            transferJournal = TransferServiceFixture.NO_JOURNAL;
+        }
+        requestDto = new RequestDto(CARD_FROM, "12/39", "123", CARD_TO, new RequestDto.PaymentDto("RUR", 10_000));
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        transferRepository = TransferServiceFixture.transferRepository();
+        transferService = TransferServiceFixture.transferService(transferRepository, cardRepository, transferJournal);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception {
+        if (transferJournal instanceof TransferJournalImpl mappedJournal) {
+            mappedJournal.close();
+            FileSystemUtils.deleteRecursively(journalDirectory);
+        }
+    }
+
+    @Benchmark
+    public RegisterStatusDto transfer() {
+        return transferService.transfer(requestDto);
+    }
+
+    @Benchmark
+    public RegisterStatusDto transferAndConfirm() {
+        RegisterStatusDto registered = transferService.transfer(requestDto);
+        String code = transferRepository.getRequest(Long.parseLong(registered.operationId())).getVerificationCode();
+        return transferService.confirm(new ConfirmOperationDTO(registered.operationId(), code));
+    }
+}
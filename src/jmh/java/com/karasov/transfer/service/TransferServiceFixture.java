@@ -0,0 +1,103 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.CardRepository;
+import com.karasov.transfer.repository.TransferHistoryImpl;
+import com.karasov.transfer.repository.TransferJournal;
+import com.karasov.transfer.repository.TransferRepositoryImpl;
+import com.karasov.transfer.utils.CardNumbers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Сборка {@link TransferService} для бенчмарков без контекста Spring.
+ */
+public final class TransferServiceFixture {
+
+    /**
+     * Журнал, не выполняющий запись: изолирует бенчмарк от дискового ввода-вывода.
+     */
+    public static final TransferJournal NO_JOURNAL =
+            (type, operationId, cardFrom, cardTo, amount) -> CompletableFuture.completedFuture(null);
+
+    /**
+     * Скоростные правила выключены: бенчмарки многократно переводят с одних и тех же карт.
+     */
+    public static final VelocityEngine NO_VELOCITY_LIMITS =
+            new VelocityEngine(false, Duration.ofMinutes(10), 60, 20, 100_000);
+
+    /**
+     * Отправка кодов в шлюз, ничего не отправляющий: регистрация перевода включает только постановку в очередь.
+     */
+    public static final SmsDispatcher NO_SMS = new SmsDispatcher(
+            messages -> {
+            }, 1 << 20, 1024, 1, Duration.ofMillis(100), Duration.ofMillis(100), new SimpleMeterRegistry());
+
+    private TransferServiceFixture() {
+    }
+
+    public static TransferRepositoryImpl transferRepository() {
+        return new TransferRepositoryImpl(Duration.ofMinutes(5), Integer.MAX_VALUE, 100);
+    }
+
+    public static TransferService transferService(TransferRepositoryImpl transferRepository,
+                                                  CardRepository cardRepository,
+                                                  TransferJournal transferJournal) {
+        TransferMetrics metrics = metrics(transferRepository);
+        return transferService(transferRepository, cardRepository,
+                ledger("journaled", transferJournal, metrics), metrics);
+    }
+
+    public static TransferService transferService(TransferRepositoryImpl transferRepository,
+                                                  CardRepository cardRepository,
+                                                  TransferLedger transferLedger,
+                                                  TransferMetrics metrics) {
+        return new TransferService(
+                transferRepository,
+                cardRepository,
+                transferLedger,
+                metrics,
+                new OperationIdGenerator(0),
+                NO_VELOCITY_LIMITS,
+                NO_SMS,
+                new FxRates(""),
+                new TransferHistoryImpl(1 << 20, 0),
+                3,
+                false);
+    }
+
+    public static TransferMetrics metrics(TransferRepositoryImpl transferRepository) {
+        return new TransferMetrics(new SimpleMeterRegistry(), transferRepository);
+    }
+
+    /**
+     * @param mode режим, как в свойстве {@code transfer.ledger.mode}: {@code journaled}, {@code sequenced} или {@code sharded}
+     */
+    public static TransferLedger ledger(String mode, TransferJournal transferJournal, TransferMetrics metrics) {
+        return switch (mode) {
+            case "journaled" -> new JournaledTransferLedger(transferJournal, metrics, 0);
+            case "sequenced" -> new SequencedTransferLedger(transferJournal, metrics, 65536);
+            case "sharded" -> new ShardedTransferLedger(transferJournal, metrics, 0);
+            default -> throw new IllegalArgumentException("Unknown ledger mode: " + mode);
+        };
+    }
+
+    /**
+     * Удерживает сумму на карте отправителя и проводит ее через {@link TransferLedger#capture},
+     * как регистрация и подтверждение перевода, ожидая фиксации.
+     *
+     * @return {@code true}, если перевод проведен; {@code false}, если средств для удержания недостаточно
+     */
+    public static boolean holdAndCapture(TransferLedger transferLedger, Card from, Card to, long amount) {
+        if (!from.hold(amount)) {
+            return false;
+        }
+        return transferLedger.capture(0,
+                from, CardNumbers.parse(from.getCardNumber()),
+                to, CardNumbers.parse(to.getCardNumber()),
+                amount).join();
+    }
+}
@@ -0,0 +1,35 @@
+package com.karasov.transfer.utils;
+
+import com.karasov.transfer.dto.RequestDto;
+import com.karasov.transfer.models.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование {@link RequestDto} в {@link Request} через {@link RequestMapper#requestDtoToRequest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestMapperBenchmark {
+
+    private final RequestDto requestDto = new RequestDto(
+            "4111111111111111", "12/39", "123", "5555555555554444", new RequestDto.PaymentDto("RUR", 10_000));
+
+    @Benchmark
+    public Request requestDtoToRequest() {
+        return RequestMapper.requestDtoToRequest(requestDto);
+    }
+}
@@ -0,0 +1,84 @@
+package com.karasov.transfer.utils;
+
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.models.Currency;
+import com.karasov.transfer.models.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение {@link Validator} с прежней проверкой через {@link String#matches}.
+ * <p>
+ * Скорость выделения памяти показывает профилировщик GC:
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.args="ValidatorBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    private Request request;
+    private String rawValidTill;
+
+    @Setup
+    public void setUp() {
+        request = new Request(new Card("4111111111111111", "1239", "123"), "5555555555554444", 10_000L, Currency.RUR);
+        rawValidTill = "12/39";
+    }
+
+    @Benchmark
+    public boolean regexValidation() {
+        Card cardFrom = request.getCardFrom();
+        return legacyCardNumber(cardFrom.getCardNumber())
+                && legacyCardNumber(request.getCardToNumber())
+                && legacyExpireDate(cardFrom.getValidTill())
+                && cardFrom.getCvv().matches("^[0-9]{3}$")
+                && request.getPayment().getPaymentValue() > 0
+                && request.getPayment().getCurrency() == Currency.RUR;
+    }
+
+    @Benchmark
+    public ValidationResult scanningValidation() {
+        return Validator.validate(request, true);
+    }
+
+    @Benchmark
+    public String regexDigitsOnly() {
+        return rawValidTill.replaceAll("[^\\d]", "");
+    }
+
+    @Benchmark
+    public String scanningDigitsOnly() {
+        return RequestMapper.digitsOnly(rawValidTill);
+    }
+
+    private static boolean legacyCardNumber(String cardNumber) {
+        return cardNumber.matches("^[0-9]{16}$");
+    }
+
+    private static boolean legacyExpireDate(String validTill) {
+        if (!validTill.matches("^(0[1-9]|1[0-2])\\d{2}$")) {
+            return false;
+        }
+        int month = Integer.parseInt(validTill.substring(0, 2));
+        int year = 2000 + Integer.parseInt(validTill.substring(2, 4));
+        return LocalDateTime.now().isBefore(LocalDate.of(year, month, 1).atStartOfDay());
+    }
+}
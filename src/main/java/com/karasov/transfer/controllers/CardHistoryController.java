@@ -0,0 +1,119 @@
+package com.karasov.transfer.controllers;
+
+import com.karasov.transfer.dto.HistoryEntryDto;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.CardRepository;
+import com.karasov.transfer.repository.TransferHistory;
+import com.karasov.transfer.utils.CardNumbers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+
+/**
+ * Рест контроллер истории операций по карте.
+ * <p>
+ * История читается из {@link TransferHistory} курсором от новых операций к старым и отдается
+ * в формате NDJSON по мере чтения, без построения всего результата в памяти. Контроллер
+ * возвращает {@link Flux}, поэтому работает и в сервлетном, и в реактивном стеке.
+ * <p>
+ * История выдается только при предъявлении срока действия и CVV карты в заголовках
+ * {@value #VALID_TILL_HEADER} и {@value #CVV_HEADER}; в заголовках, а не в параметрах запроса,
+ * они не попадают в журналы доступа.
+ */
+@RestController
+public class CardHistoryController {
+
+    static final String VALID_TILL_HEADER = "X-Card-Valid-Till";
+    static final String CVV_HEADER = "X-Card-CVV";
+
+    private final CardRepository cardRepository;
+    private final TransferHistory transferHistory;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    /**
+     * @param defaultPageSize количество операций на странице, если оно не задано в запросе
+     * @param maxPageSize     максимальное количество операций на странице
+     */
+    public CardHistoryController(CardRepository cardRepository,
+                                 TransferHistory transferHistory,
+                                 @Value("${transfer.history.page-size:100}") int defaultPageSize,
+                                 @Value("${transfer.history.max-page-size:10000}") int maxPageSize) {
+        this.cardRepository = cardRepository;
+        this.transferHistory = transferHistory;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Возвращает страницу истории операций по карте от новых к старым.
+     * Для следующей страницы в {@code cursor} передается значение {@code cursor} последней
+     * операции текущей страницы. Некорректный номер карты или размер страницы отклоняется
+     * со статусом 400 (BAD REQUEST). Если карта не найдена или срок действия и CVV не совпадают
+     * с данными карты, запрос отклоняется со статусом 404 (NOT FOUND), чтобы ответ не раскрывал
+     * существование карты.
+     *
+     * @param number    номер карты
+     * @param validTill срок действия карты
+     * @param cvv       CVV карты
+     * @param from   начало периода включительно, необязательное
+     * @param to     конец периода не включительно, необязательный
+     * @param cursor позиция последней операции предыдущей страницы, необязательная
+     * @param limit  количество операций на странице, необязательное
+     * @return поток операций {@link HistoryEntryDto}
+     */
+    @CrossOrigin
+    @GetMapping(value = "/cards/{number}/history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<HistoryEntryDto> history(@PathVariable String number,
+                                         @RequestHeader(VALID_TILL_HEADER) String validTill,
+                                         @RequestHeader(CVV_HEADER) String cvv,
+                                         @RequestParam(required = false) Instant from,
+                                         @RequestParam(required = false) Instant to,
+                                         @RequestParam(required = false) Long cursor,
+                                         @RequestParam(required = false) Integer limit) {
+        long cardNumber = CardNumbers.parse(number);
+        int pageSize = limit == null ? defaultPageSize : limit;
+        if (cardNumber == CardNumbers.INVALID || pageSize <= 0 || pageSize > maxPageSize) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST));
+        }
+        Card card = cardRepository.getCardByNumber(cardNumber);
+        if (card == null || !card.equals(new Card(card.getCardNumber(), validTill, cvv))) {
+            return Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        }
+        TransferHistory.Cursor entries = transferHistory.history(
+                cardNumber,
+                from == null ? Long.MIN_VALUE : from.toEpochMilli(),
+                to == null ? Long.MAX_VALUE : to.toEpochMilli(),
+                cursor == null ? TransferHistory.FIRST_PAGE : cursor);
+        return Flux.<HistoryEntryDto>generate(sink -> {
+                    if (entries.next()) {
+                        sink.next(toDto(entries));
+                    } else {
+                        sink.complete();
+                    }
+                })
+                .take(pageSize, true);
+    }
+
+    private static HistoryEntryDto toDto(TransferHistory.Cursor entry) {
+        return new HistoryEntryDto(
+                String.valueOf(entry.operationId()),
+                entry.position(),
+                Instant.ofEpochMilli(entry.timestamp()),
+                entry.outgoing(),
+                CardNumbers.format(entry.counterparty()),
+                entry.amount(),
+                entry.outgoing() ? entry.commission() : 0L,
+                entry.status());
+    }
+}
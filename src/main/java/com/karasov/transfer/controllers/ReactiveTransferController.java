@@ -0,0 +1,266 @@
+package com.karasov.transfer.controllers;
+
+import com.karasov.transfer.dto.BatchResultDto;
+import com.karasov.transfer.dto.ConfirmOperationDTO;
+import com.karasov.transfer.dto.RegisterStatusDto;
+import com.karasov.transfer.dto.RequestDto;
+import com.karasov.transfer.dto.TransferStatus;
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.metrics.TransferMetrics.Stage;
+import com.karasov.transfer.models.TransferResponse;
+import com.karasov.transfer.service.AdmissionControl;
+import com.karasov.transfer.service.IdempotencyCache;
+import com.karasov.transfer.service.TransferService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Реактивный вариант {@link TransferController} для стека WebFlux на Netty
+ * ({@code spring.main.web-application-type=reactive}).
+ * <p>
+ * Обслуживает те же адреса и вызывает те же методы {@link TransferService}. Регистрация перевода
+ * выполняется в памяти и не блокирует поток событий. Подтверждение может ожидать проводки
+ * в {@code TransferLedger}, поэтому запускается на ограниченном планировщике, а фиксация перевода в журнале ожидается
+ * без блокировки потока через {@link TransferService#confirmAsync(ConfirmOperationDTO)}.
+ * <p>
+ * Пакетные запросы в формате NDJSON читаются с ограниченной предвыборкой ({@code limitRate}),
+ * а подтверждения пакета выполняются с ограниченным параллелизмом, поэтому клиент, передающий
+ * пакет быстрее, чем он обрабатывается, притормаживается через обратное давление.
+ * <p>
+ * Разрешение {@link AdmissionControl} запрашивается при подписке на ответ, до чтения тела запроса,
+ * поэтому при перегрузке запрос отклоняется без разбора JSON.
+ */
+@Slf4j
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveTransferController {
+
+    private final TransferService transferService;
+    private final TransferMetrics transferMetrics;
+    private final IdempotencyCache idempotencyCache;
+    private final AdmissionControl admissionControl;
+    private final Scheduler blockingScheduler;
+    private final int batchPrefetch;
+    private final int batchConcurrency;
+
+    /**
+     * @param blockingThreads  максимальное количество потоков для подтверждений; 0 — десять на процессор
+     * @param blockingQueue    максимальное количество подтверждений, ожидающих потока
+     * @param batchPrefetch    количество элементов пакета, запрашиваемых из тела запроса за раз
+     * @param batchConcurrency количество одновременно выполняемых подтверждений одного пакета
+     */
+    public ReactiveTransferController(TransferService transferService,
+                                      TransferMetrics transferMetrics,
+                                      IdempotencyCache idempotencyCache,
+                                      AdmissionControl admissionControl,
+                                      @Value("${transfer.reactive.blocking-threads:0}") int blockingThreads,
+                                      @Value("${transfer.reactive.blocking-queue:100000}") int blockingQueue,
+                                      @Value("${transfer.reactive.batch-prefetch:256}") int batchPrefetch,
+                                      @Value("${transfer.reactive.batch-concurrency:64}") int batchConcurrency) {
+        this.transferService = transferService;
+        this.transferMetrics = transferMetrics;
+        this.idempotencyCache = idempotencyCache;
+        this.admissionControl = admissionControl;
+        this.blockingScheduler = Schedulers.newBoundedElastic(
+                blockingThreads == 0 ? 10 * Runtime.getRuntime().availableProcessors() : blockingThreads,
+                blockingQueue,
+                "transfer-confirm");
+        this.batchPrefetch = batchPrefetch;
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    @PreDestroy
+    public void close() {
+        blockingScheduler.dispose();
+    }
+
+    /**
+     * Осуществляет прием запроса на перевод денежных средств с карты на карту.
+     * Поведение совпадает с {@link TransferController#transfer(RequestDto, String)}.
+     *
+     * @param body           тело запроса с объектом {@link RequestDto}
+     * @param idempotencyKey ключ идемпотентности, необязательный
+     * @return ответ с объектом {@link TransferResponse}, инкапсулирующим идентификатор операции
+     */
+    @CrossOrigin
+    @PostMapping("/transfer")
+    public Mono<ResponseEntity<TransferResponse>> transfer(@RequestBody Mono<RequestDto> body,
+                                                           @RequestHeader(value = "Idempotency-Key", required = false)
+                                                           String idempotencyKey) {
+        return Mono.defer(() -> {
+            long admittedAt = transferMetrics.start();
+            AdmissionControl.Decision decision = admissionControl.admit();
+            if (decision != AdmissionControl.Decision.ADMITTED) {
+                return Mono.just(TransferController.<TransferResponse>shed(decision));
+            }
+            return body
+                    .map(requestDto -> {
+                        if (!admissionControl.admitCard(requestDto.cardFromNumber())) {
+                            return TransferController.<TransferResponse>shed(
+                                    AdmissionControl.Decision.CARD_RATE_EXCEEDED);
+                        }
+                        return register(requestDto, idempotencyKey);
+                    })
+                    .doFinally(signal -> admissionControl.complete(admittedAt));
+        });
+    }
+
+    /**
+     * Осуществляет перевод денежных средств с карты на карту.
+     * Поведение совпадает с {@link TransferController#confirm(ConfirmOperationDTO)}.
+     *
+     * @param body тело запроса с объектом {@link ConfirmOperationDTO}
+     * @return ответ с идентификатором операции
+     */
+    @CrossOrigin
+    @PostMapping("/confirmOperation")
+    public Mono<ResponseEntity<String>> confirm(@RequestBody Mono<ConfirmOperationDTO> body) {
+        return Mono.defer(() -> {
+            long admittedAt = transferMetrics.start();
+            AdmissionControl.Decision decision = admissionControl.admit();
+            if (decision != AdmissionControl.Decision.ADMITTED) {
+                return Mono.just(TransferController.<String>shed(decision));
+            }
+            return body.flatMap(this::confirmOne)
+                    .doFinally(signal -> admissionControl.complete(admittedAt))
+                    .map(registerStatusDto -> {
+                        long stageStart = transferMetrics.start();
+                        log.info("{}", registerStatusDto);
+                        ResponseEntity<String> response = new ResponseEntity<>(
+                                String.valueOf(registerStatusDto.operationId()),
+                                registerStatusDto.requestValidated() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+                        transferMetrics.lap(Stage.RESPONSE, stageStart);
+                        return response;
+                    });
+        });
+    }
+
+    /**
+     * Осуществляет пакетный прием запросов на перевод в формате NDJSON.
+     *
+     * @param body поток запросов {@link RequestDto}
+     * @return поток результатов {@link BatchResultDto} в порядке запросов
+     */
+    @CrossOrigin
+    @PostMapping(value = "/transfer/batch",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchResultDto> transferBatch(@RequestBody Flux<RequestDto> body) {
+        return admitBatch(stopOnMalformedItem(body, items -> items
+                .limitRate(batchPrefetch)
+                .map(requestDto -> {
+                    if (!admissionControl.admitCard(requestDto.cardFromNumber())) {
+                        RegisterStatusDto rateLimited = RegisterStatusDto.rejected(TransferStatus.RATE_LIMITED, requestDto);
+                        log.info("{}", rateLimited);
+                        return toBatchResult(rateLimited);
+                    }
+                    RegisterStatusDto registerStatusDto = transferService.transfer(requestDto);
+                    if (!registerStatusDto.requestValidated()) {
+                        log.info("{}", registerStatusDto);
+                    }
+                    return toBatchResult(registerStatusDto);
+                })));
+    }
+
+    /**
+     * Осуществляет пакетное подтверждение переводов в формате NDJSON.
+     *
+     * @param body поток подтверждений {@link ConfirmOperationDTO}
+     * @return поток результатов {@link BatchResultDto} в порядке подтверждений
+     */
+    @CrossOrigin
+    @PostMapping(value = "/confirmOperation/batch",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchResultDto> confirmBatch(@RequestBody Flux<ConfirmOperationDTO> body) {
+        return admitBatch(stopOnMalformedItem(body, items -> items
+                .limitRate(batchPrefetch)
+                .flatMapSequential(this::confirmOne, batchConcurrency)
+                .map(registerStatusDto -> {
+                    log.info("{}", registerStatusDto);
+                    return toBatchResult(registerStatusDto);
+                })));
+    }
+
+    private ResponseEntity<TransferResponse> register(RequestDto requestDto, String idempotencyKey) {
+        RegisterStatusDto registerStatusDto;
+        if (idempotencyKey == null) {
+            registerStatusDto = transferService.transfer(requestDto);
+        } else {
+            IdempotencyCache.Entry entry = idempotencyCache.get(idempotencyKey, requestDto, transferService::transfer);
+            if (!entry.request().equals(requestDto)) {
+                log.info("Idempotency key {} reused with different transfer data", idempotencyKey);
+                return ResponseEntity.unprocessableEntity().build();
+            }
+            registerStatusDto = entry.status();
+        }
+        long stageStart = transferMetrics.start();
+        if (!registerStatusDto.requestValidated()) {
+            log.info("{}", registerStatusDto);
+        }
+        ResponseEntity<TransferResponse> response = new ResponseEntity<>(
+                new TransferResponse(String.valueOf(registerStatusDto.operationId())),
+                registerStatusDto.requestValidated() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+        transferMetrics.lap(Stage.RESPONSE, stageStart);
+        return response;
+    }
+
+    private Mono<RegisterStatusDto> confirmOne(ConfirmOperationDTO confirmOperationDTO) {
+        return Mono.fromFuture(() -> transferService.confirmAsync(confirmOperationDTO))
+                .subscribeOn(blockingScheduler);
+    }
+
+    /**
+     * Пакет занимает одно разрешение общего предела одновременных запросов и не влияет на его адаптацию.
+     * При перегрузке ответ завершается ошибкой со статусом 503 (SERVICE UNAVAILABLE).
+     */
+    private Flux<BatchResultDto> admitBatch(Flux<BatchResultDto> results) {
+        return Flux.defer(() -> {
+            if (admissionControl.admit() != AdmissionControl.Decision.ADMITTED) {
+                return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE));
+            }
+            return results.doFinally(signal -> admissionControl.cancel());
+        });
+    }
+
+    private static BatchResultDto toBatchResult(RegisterStatusDto registerStatusDto) {
+        return BatchResultDto.of(registerStatusDto);
+    }
+
+    /**
+     * Обрабатывает элементы пакета до первого неразобранного элемента. Результаты уже начатых элементов
+     * дописываются, а последней строкой добавляется ошибка {@link BatchResultDto#MALFORMED_ITEM}.
+     */
+    private static <T> Flux<BatchResultDto> stopOnMalformedItem(Flux<T> body,
+                                                                Function<Flux<T>, Flux<BatchResultDto>> pipeline) {
+        return Flux.defer(() -> {
+            AtomicBoolean malformed = new AtomicBoolean();
+            Flux<T> items = body.onErrorResume(DecodingException.class, e -> {
+                log.info("Batch processing stopped on malformed item: {}", e.getMessage());
+                malformed.set(true);
+                return Flux.empty();
+            });
+            return pipeline.apply(items)
+                    .concatWith(Mono.fromSupplier(() -> malformed.get() ? BatchResultDto.malformedItem() : null));
+        });
+    }
+}
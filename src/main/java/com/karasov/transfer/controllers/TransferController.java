@@ -1,32 +1,82 @@
 package com.karasov.transfer.controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.karasov.transfer.dto.BatchResultDto;
 import com.karasov.transfer.dto.ConfirmOperationDTO;
 import com.karasov.transfer.dto.RegisterStatusDto;
 import com.karasov.transfer.dto.RequestDto;
+import com.karasov.transfer.dto.TransferStatus;
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.metrics.TransferMetrics.Stage;
 import com.karasov.transfer.models.TransferResponse;
+import com.karasov.transfer.service.AdmissionControl;
+import com.karasov.transfer.service.IdempotencyCache;
 import com.karasov.transfer.service.TransferService;
-import lombok.RequiredArgsConstructor;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Рест контроллер для осуществления переводов.
  * Этот контроллер обрабатывает HTTP-запросы по адресу '/transfer'.
  * Он отвечает за выполнение операции перевода денежных средств и
- * подтверждение операции.
+ * подтверждение операции, в том числе пакетное в формате NDJSON.
+ * Используется в сервлетном стеке; в реактивном стеке те же адреса обслуживает
+ * {@link ReactiveTransferController}.
  */
 @Slf4j
-@RequiredArgsConstructor
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class TransferController {
 
+    static final String RETRY_AFTER_SECONDS = "1";
+
     private final TransferService transferService;
+    private final ObjectMapper objectMapper;
+    private final TransferMetrics transferMetrics;
+    private final IdempotencyCache idempotencyCache;
+    private final AdmissionControl admissionControl;
+    private final int batchConfirmWindow;
+
+    /**
+     * @param batchConfirmWindow максимальное количество одновременно выполняемых подтверждений одного пакета
+     */
+    public TransferController(TransferService transferService,
+                              ObjectMapper objectMapper,
+                              TransferMetrics transferMetrics,
+                              IdempotencyCache idempotencyCache,
+                              AdmissionControl admissionControl,
+                              @Value("${transfer.batch.confirm-window:64}") int batchConfirmWindow) {
+        if (batchConfirmWindow <= 0) {
+            throw new IllegalArgumentException("Batch confirm window must be positive: " + batchConfirmWindow);
+        }
+        this.transferService = transferService;
+        this.objectMapper = objectMapper;
+        this.transferMetrics = transferMetrics;
+        this.idempotencyCache = idempotencyCache;
+        this.admissionControl = admissionControl;
+        this.batchConfirmWindow = batchConfirmWindow;
+    }
 
     /**
      * Осуществляет прием запроса на перевод денежных средств с карты на карту.
@@ -35,21 +85,61 @@ public class TransferController {
      * метод возвращает идентификатор операции со статусом 200 (OK). Если
      * произошла ошибка, возвращается идентификатор операции со статусом
      * 400 (BAD REQUEST).
+     * <p>
+     * Если передан заголовок {@code Idempotency-Key}, повторный запрос с тем же ключом получает
+     * результат первого запроса из {@link IdempotencyCache}, и новая операция не создается.
+     * Повтор ключа с другими данными перевода отклоняется со статусом 422 (UNPROCESSABLE ENTITY).
+     * <p>
+     * Запрос, не прошедший {@link AdmissionControl}, отклоняется до валидации со статусом
+     * 429 (TOO MANY REQUESTS) или 503 (SERVICE UNAVAILABLE).
      *
-     * @param requestDto объект, содержащий данные для перевода, включая
-     *                   информацию о картах и сумму перевода.
+     * @param requestDto     объект, содержащий данные для перевода, включая
+     *                       информацию о картах и сумму перевода.
+     * @param idempotencyKey ключ идемпотентности, необязательный
      * @return ResponseEntity с объектом {@link TransferResponse}, инкапсулирующим идентификатор операции
      */
     @CrossOrigin
     @PostMapping("/transfer")
-    public ResponseEntity<TransferResponse> transfer(@RequestBody RequestDto requestDto) {
-        RegisterStatusDto registerStatusDto = transferService.transfer(requestDto);
+    public ResponseEntity<TransferResponse> transfer(@RequestBody RequestDto requestDto,
+                                                     @RequestHeader(value = "Idempotency-Key", required = false)
+                                                     String idempotencyKey) {
+        long admittedAt = transferMetrics.start();
+        AdmissionControl.Decision decision = admissionControl.admit(requestDto.cardFromNumber());
+        if (decision != AdmissionControl.Decision.ADMITTED) {
+            return shed(decision);
+        }
+        try {
+            return register(requestDto, idempotencyKey);
+        } finally {
+            admissionControl.complete(admittedAt);
+        }
+    }
+
+    private ResponseEntity<TransferResponse> register(RequestDto requestDto, String idempotencyKey) {
+        RegisterStatusDto registerStatusDto;
+        if (idempotencyKey == null) {
+            registerStatusDto = transferService.transfer(requestDto);
+        } else {
+            IdempotencyCache.Entry entry = idempotencyCache.get(idempotencyKey, requestDto, transferService::transfer);
+            if (!entry.request().equals(requestDto)) {
+                log.info("Idempotency key {} reused with different transfer data", idempotencyKey);
+                return ResponseEntity.unprocessableEntity().build();
+            }
+            registerStatusDto = entry.status();
+        }
+        long stageStart = transferMetrics.start();
         if (registerStatusDto.requestValidated()) {
-            return ResponseEntity.ok(new TransferResponse(String.valueOf(registerStatusDto.operationId())));
+            ResponseEntity<TransferResponse> response =
+                    ResponseEntity.ok(new TransferResponse(String.valueOf(registerStatusDto.operationId())));
+            transferMetrics.lap(Stage.RESPONSE, stageStart);
+            return response;
         }
 
-        log.info(registerStatusDto.statusMessage());
-        return new ResponseEntity<>(new TransferResponse(String.valueOf(registerStatusDto.operationId())), HttpStatus.BAD_REQUEST);
+        log.info("{}", registerStatusDto);
+        ResponseEntity<TransferResponse> response = new ResponseEntity<>(
+                new TransferResponse(String.valueOf(registerStatusDto.operationId())), HttpStatus.BAD_REQUEST);
+        transferMetrics.lap(Stage.RESPONSE, stageStart);
+        return response;
     }
 
     /**
@@ -57,6 +147,7 @@ public class TransferController {
      * Этот метод принимает данные для подтверждения перевода {@link ConfirmOperationDTO}, передает его на валидацию в
      * сервис {@link TransferService} и логгирует результат. Если данные валидны,
      * метод совершает перевод со статусом 200 (OK) или 400 (BAD REQUEST) в противном случае.
+     * При превышении предела одновременных запросов возвращается 503 (SERVICE UNAVAILABLE).
      *
      * @param confirmOperationDTO объект, содержащий подтверждающие данные для перевода:
      *                            номер операции и верификационный номер.
@@ -65,12 +156,158 @@ public class TransferController {
     @CrossOrigin
     @PostMapping("/confirmOperation")
     public ResponseEntity<String> confirm(@RequestBody ConfirmOperationDTO confirmOperationDTO) {
-        RegisterStatusDto registerStatusDto = transferService.confirm(confirmOperationDTO);
-        log.info(registerStatusDto.statusMessage());
+        long admittedAt = transferMetrics.start();
+        AdmissionControl.Decision decision = admissionControl.admit();
+        if (decision != AdmissionControl.Decision.ADMITTED) {
+            return shed(decision);
+        }
+        RegisterStatusDto registerStatusDto;
+        try {
+            registerStatusDto = transferService.confirm(confirmOperationDTO);
+        } finally {
+            admissionControl.complete(admittedAt);
+        }
+        long stageStart = transferMetrics.start();
+        log.info("{}", registerStatusDto);
 
-        if (registerStatusDto.requestValidated()) {
-            return new ResponseEntity<>(String.valueOf(registerStatusDto.operationId()), HttpStatus.OK);
+        ResponseEntity<String> response = new ResponseEntity<>(
+                String.valueOf(registerStatusDto.operationId()),
+                registerStatusDto.requestValidated() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+        transferMetrics.lap(Stage.RESPONSE, stageStart);
+        return response;
+    }
+
+    /**
+     * Осуществляет пакетный прием запросов на перевод денежных средств.
+     * Тело запроса содержит объекты {@link RequestDto} в формате NDJSON (по одному JSON-объекту в строке)
+     * и разбирается по мере поступления. Каждый запрос передается в сервис {@link TransferService},
+     * а результат сразу записывается в ответ строкой {@link BatchResultDto}, поэтому потребление
+     * памяти не зависит от размера пакета. Если элемент не удалось разобрать, обработка прекращается,
+     * а последней строкой записывается результат с ошибкой {@link BatchResultDto#MALFORMED_ITEM}.
+     *
+     * @param body     поток тела запроса
+     * @param response ответ, в который построчно записываются результаты
+     * @throws IOException при ошибке чтения запроса или записи ответа
+     */
+    @CrossOrigin
+    @PostMapping(value = "/transfer/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public void transferBatch(InputStream body, HttpServletResponse response) throws IOException {
+        streamBatch(body, response, RequestDto.class, 1, requestDto -> {
+            if (!admissionControl.admitCard(requestDto.cardFromNumber())) {
+                RegisterStatusDto rateLimited = RegisterStatusDto.rejected(TransferStatus.RATE_LIMITED, requestDto);
+                log.info("{}", rateLimited);
+                return CompletableFuture.completedFuture(rateLimited);
+            }
+            RegisterStatusDto registerStatusDto = transferService.transfer(requestDto);
+            if (!registerStatusDto.requestValidated()) {
+                log.info("{}", registerStatusDto);
+            }
+            return CompletableFuture.completedFuture(registerStatusDto);
+        });
+    }
+
+    /**
+     * Осуществляет пакетное подтверждение переводов.
+     * Тело запроса содержит объекты {@link ConfirmOperationDTO} в формате NDJSON и обрабатывается
+     * так же, как в {@link #transferBatch(InputStream, HttpServletResponse)}, но подтверждения
+     * выполняются через {@link TransferService#confirmAsync(ConfirmOperationDTO)}: одновременно
+     * ожидают фиксации в журнале не более {@code transfer.batch.confirm-window} подтверждений пакета,
+     * а результаты записываются в порядке подтверждений.
+     *
+     * @param body     поток тела запроса
+     * @param response ответ, в который построчно записываются результаты
+     * @throws IOException при ошибке чтения запроса или записи ответа
+     */
+    @CrossOrigin
+    @PostMapping(value = "/confirmOperation/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public void confirmBatch(InputStream body, HttpServletResponse response) throws IOException {
+        streamBatch(body, response, ConfirmOperationDTO.class, batchConfirmWindow, confirmOperationDTO ->
+                transferService.confirmAsync(confirmOperationDTO).thenApply(registerStatusDto -> {
+                    log.info("{}", registerStatusDto);
+                    return registerStatusDto;
+                }));
+    }
+
+    /**
+     * Последовательно читает элементы пакета из тела запроса, обрабатывает их и записывает результаты
+     * в порядке элементов. Одновременно обрабатывается не более {@code window} элементов: при заполнении
+     * окна записывается результат самого раннего из них. Когда очередная часть тела запроса прочитана
+     * полностью, записываются результаты всех начатых элементов и ответ сбрасывается клиенту.
+     * При ошибке разбора обработка пакета прекращается, а последней строкой записывается ошибка.
+     * <p>
+     * Пакет занимает одно разрешение общего предела одновременных запросов и не влияет на его
+     * адаптацию; переводы пакета ограничиваются корзинами карт отправителей так же, как одиночные.
+     */
+    private <T> void streamBatch(InputStream body,
+                                 HttpServletResponse response,
+                                 Class<T> itemType,
+                                 int window,
+                                 Function<T, CompletableFuture<RegisterStatusDto>> handler) throws IOException {
+        AdmissionControl.Decision decision = admissionControl.admit();
+        if (decision != AdmissionControl.Decision.ADMITTED) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            return;
+        }
+        try {
+            writeBatch(body, response, itemType, window, handler);
+        } finally {
+            admissionControl.cancel();
         }
-        return new ResponseEntity<>(String.valueOf(registerStatusDto.operationId()), HttpStatus.BAD_REQUEST);
+    }
+
+    private <T> void writeBatch(InputStream body,
+                                HttpServletResponse response,
+                                Class<T> itemType,
+                                int window,
+                                Function<T, CompletableFuture<RegisterStatusDto>> handler) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        ObjectWriter resultWriter = objectMapper.writerFor(BatchResultDto.class);
+        OutputStream out = response.getOutputStream();
+        ArrayDeque<CompletableFuture<RegisterStatusDto>> inFlight = new ArrayDeque<>(window);
+        try (MappingIterator<T> items = objectMapper.readerFor(itemType).readValues(body)) {
+            while (items.hasNextValue()) {
+                inFlight.add(handler.apply(items.nextValue()));
+                if (inFlight.size() >= window) {
+                    writeResult(out, resultWriter, BatchResultDto.of(inFlight.remove().join()));
+                }
+                if (body.available() == 0) {
+                    writeResults(out, resultWriter, inFlight);
+                    out.flush();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            log.info("Batch processing stopped on malformed item: {}", e.getOriginalMessage());
+            writeResults(out, resultWriter, inFlight);
+            writeResult(out, resultWriter, BatchResultDto.malformedItem());
+        }
+        writeResults(out, resultWriter, inFlight);
+        out.flush();
+    }
+
+    private static void writeResults(OutputStream out,
+                                     ObjectWriter resultWriter,
+                                     ArrayDeque<CompletableFuture<RegisterStatusDto>> inFlight) throws IOException {
+        while (!inFlight.isEmpty()) {
+            writeResult(out, resultWriter, BatchResultDto.of(inFlight.remove().join()));
+        }
+    }
+
+    private static void writeResult(OutputStream out, ObjectWriter resultWriter, BatchResultDto result)
+            throws IOException {
+        out.write(resultWriter.writeValueAsBytes(result));
+        out.write('\n');
+    }
+
+    /**
+     * Строит ответ на отклоненный запрос: 429 (TOO MANY REQUESTS), если превышена частота переводов
+     * с карты, или 503 (SERVICE UNAVAILABLE), если превышен предел одновременных запросов.
+     */
+    static <T> ResponseEntity<T> shed(AdmissionControl.Decision decision) {
+        return ResponseEntity.status(decision == AdmissionControl.Decision.CARD_RATE_EXCEEDED
+                        ? HttpStatus.TOO_MANY_REQUESTS
+                        : HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build();
     }
 }
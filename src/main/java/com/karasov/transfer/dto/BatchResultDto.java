@@ -0,0 +1,36 @@
+package com.karasov.transfer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Результат обработки одного элемента пакета. Если операция не была зарегистрирована,
+ * {@code operationId} в ответ не включается.
+ * <p>
+ * Если очередной элемент пакета не удалось разобрать, обработка пакета прекращается, а последней
+ * строкой ответа записывается результат с {@code error}: по нему клиент отличает прерванный пакет
+ * от обработанного полностью.
+ */
+public record BatchResultDto(
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String operationId,
+        boolean success,
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String error
+) {
+
+    /**
+     * Ошибка разбора элемента пакета.
+     */
+    public static final String MALFORMED_ITEM = "MALFORMED_ITEM";
+
+    public static BatchResultDto of(RegisterStatusDto registerStatusDto) {
+        return new BatchResultDto(registerStatusDto.operationId(), registerStatusDto.requestValidated(), null);
+    }
+
+    /**
+     * @return результат, завершающий пакет, обработка которого прервана неразобранным элементом
+     */
+    public static BatchResultDto malformedItem() {
+        return new BatchResultDto(null, false, MALFORMED_ITEM);
+    }
+}
@@ -0,0 +1,15 @@
+package com.karasov.transfer.dto;
+
+import java.time.Instant;
+
+public record HistoryEntryDto(
+        String operationId,
+        long cursor,
+        Instant timestamp,
+        boolean outgoing,
+        String counterparty,
+        long amount,
+        long commission,
+        TransferStatus status
+) {
+}
@@ -0,0 +1,9 @@
+package com.karasov.transfer.dto;
+
+public record PendingStatsDto(
+        long live,
+        long expired,
+        long removed,
+        long rejected
+) {
+}
@@ -1,8 +1,45 @@
 package com.karasov.transfer.dto;
 
+/**
+ * Результат обработки запроса на перевод или его подтверждения.
+ * <p>
+ * Хранит структурированные поля вместо готового текста: сообщение {@link #statusMessage()}
+ * строится только при обращении к нему, поэтому успешные запросы, для которых сообщение
+ * не логируется, не тратят время на форматирование. Суммы хранятся в копейках.
+ */
 public record RegisterStatusDto(
-        boolean requestValidated,
+        TransferStatus status,
         String operationId,
-        String statusMessage
+        String cardFrom,
+        String cardTo,
+        long amount,
+        long commission,
+        String invalidField
 ) {
+
+    public static RegisterStatusDto of(TransferStatus status, String operationId) {
+        return new RegisterStatusDto(status, operationId, null, null, 0L, 0L, null);
+    }
+
+    /**
+     * Результат запроса на перевод, отклоненного до регистрации: идентификатор операции
+     * не выдается, а в результате сохраняются номера карт из запроса.
+     */
+    public static RegisterStatusDto rejected(TransferStatus status, RequestDto requestDto) {
+        return new RegisterStatusDto(status, null, requestDto.cardFromNumber(), requestDto.cardToNumber(),
+                0L, 0L, null);
+    }
+
+    public boolean requestValidated() {
+        return status.isSuccessful();
+    }
+
+    public String statusMessage() {
+        return status.message(this);
+    }
+
+    @Override
+    public String toString() {
+        return statusMessage();
+    }
 }
@@ -0,0 +1,106 @@
+package com.karasov.transfer.dto;
+
+import com.karasov.transfer.utils.Money;
+
+/**
+ * Статус обработки запроса на перевод или его подтверждения.
+ * <p>
+ * Каждый статус знает, как построить текстовое сообщение из полей {@link RegisterStatusDto}.
+ * Сообщение строится только по запросу, например при фактической записи в лог.
+ */
+public enum TransferStatus {
+    REGISTERED(true),
+    INVALID_INPUT(false),
+    PENDING_LIMIT_EXCEEDED(false),
+    SMS_OUTBOX_FULL(false),
+    RATE_LIMITED(false),
+    NOT_FOUND(false),
+    INVALID_CODE(false),
+    CODE_ATTEMPTS_EXCEEDED(false),
+    CARD_NOT_FOUND(false),
+    INVALID_SENDER_CARD(false),
+    INVALID_RECIPIENT_CARD(false),
+    FX_RATE_UNAVAILABLE(false),
+    VELOCITY_LIMIT_EXCEEDED(false),
+    NOT_ENOUGH_MONEY(false),
+    TRANSFER_FAILED(false),
+    TRANSFER_OUTCOME_UNKNOWN(false),
+    CONFIRMED(true);
+
+    private final boolean successful;
+
+    TransferStatus(boolean successful) {
+        this.successful = successful;
+    }
+
+    /**
+     * @return {@code true}, если статус означает успешную обработку
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * Строит текстовое сообщение о результате обработки.
+     *
+     * @param status результат обработки
+     * @return сообщение для лога
+     */
+    public String message(RegisterStatusDto status) {
+        return switch (this) {
+            case REGISTERED -> String.format(
+                    "Transfer with operationId: %s registered.", status.operationId());
+            // Сумма, которую не удалось разобрать, хранится как Money.INVALID и в сообщение не попадает.
+            case INVALID_INPUT -> status.amount() == Money.INVALID
+                    ? String.format(
+                    "Error input data (%s) for transfer with operationId: %s " +
+                            "card from: %s, " +
+                            "card to: %s.",
+                    status.invalidField(), status.operationId(), status.cardFrom(), status.cardTo())
+                    : String.format(
+                    "Error input data (%s) for transfer with operationId: %s " +
+                            "card from: %s, " +
+                            "card to: %s, " +
+                            "amount: %s.",
+                    status.invalidField(), status.operationId(), status.cardFrom(), status.cardTo(),
+                    Money.format(status.amount()));
+            case PENDING_LIMIT_EXCEEDED -> String.format(
+                    "Too many pending transfers, operationId: %s rejected.", status.operationId());
+            case SMS_OUTBOX_FULL -> String.format(
+                    "Verification code could not be queued, operationId: %s rejected.", status.operationId());
+            case RATE_LIMITED -> String.format(
+                    "Too many transfers from card %s, rejected.", status.cardFrom());
+            case NOT_FOUND -> String.format(
+                    "Request with operationId %s not found.", status.operationId());
+            case INVALID_CODE -> String.format(
+                    "Invalid verification code for transfer with operationId: %s.", status.operationId());
+            case CODE_ATTEMPTS_EXCEEDED -> String.format(
+                    "Too many invalid verification codes, transfer with operationId: %s cancelled.",
+                    status.operationId());
+            case CARD_NOT_FOUND -> String.format(
+                    "Card not found for transfer with operationId: %s.", status.operationId());
+            case INVALID_SENDER_CARD -> String.format(
+                    "Invalid sender's card details for transfer with operationId: %s.", status.operationId());
+            case INVALID_RECIPIENT_CARD -> String.format(
+                    "Invalid recipient's card number for transfer with operationId: %s.", status.operationId());
+            case FX_RATE_UNAVAILABLE -> String.format(
+                    "No exchange rate for currency of transfer with operationId: %s.", status.operationId());
+            case VELOCITY_LIMIT_EXCEEDED -> String.format(
+                    "Card velocity limit exceeded for transfer with operationId: %s.", status.operationId());
+            case TRANSFER_FAILED -> String.format(
+                    "Transfer with operationId: %s was not journaled, hold released.", status.operationId());
+            case TRANSFER_OUTCOME_UNKNOWN -> String.format(
+                    "Transfer with operationId: %s may be applied on journal recovery, hold kept.",
+                    status.operationId());
+            case NOT_ENOUGH_MONEY, CONFIRMED -> String.format(
+                    "%s for transfer with operationId: %s " +
+                            "card from: %s, " +
+                            "card to: %s, " +
+                            "amount: %s, " +
+                            "commission: %s",
+                    this == CONFIRMED ? "Success confirmation" : "Not enough money",
+                    status.operationId(), status.cardFrom(), status.cardTo(),
+                    Money.format(status.amount()), Money.format(status.commission()));
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package com.karasov.transfer.metrics;
+
+import com.karasov.transfer.dto.TransferStatus;
+import com.karasov.transfer.repository.TransferRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики обработки переводов.
+ * <p>
+ * Для каждого этапа из {@link Stage} ведется таймер {@code transfer.stage} с гистограммой
+ * задержек, публикуемой в виде бакетов Prometheus. Для каждого неуспешного статуса
+ * подтверждения ведется счетчик {@code transfer.confirm.failures}, а размер хранилища
+ * ожидающих запросов публикуется метриками {@code transfer.pending.*}.
+ * <p>
+ * Все таймеры и счетчики создаются заранее и выбираются по порядковому номеру перечисления,
+ * поэтому запись значения не ищет метрику в реестре и не выделяет память.
+ */
+@Component
+public class TransferMetrics {
+
+    /**
+     * Этапы обработки перевода.
+     */
+    public enum Stage {
+        MAPPING,
+        VALIDATION,
+        PENDING_LOOKUP,
+        CARD_LOOKUP,
+        HOLD,
+        VELOCITY_CHECK,
+        BALANCE_UPDATE,
+        JOURNAL_COMMIT,
+        RESPONSE
+    }
+
+    private final Timer[] stageTimers = new Timer[Stage.values().length];
+    private final Counter[] confirmFailures = new Counter[TransferStatus.values().length];
+
+    public TransferMetrics(MeterRegistry registry, TransferRepository transferRepository) {
+        for (Stage stage : Stage.values()) {
+            stageTimers[stage.ordinal()] = Timer.builder("transfer.stage")
+                    .description("Latency of a transfer processing stage")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(100))
+                    .maximumExpectedValue(Duration.ofSeconds(1))
+                    .register(registry);
+        }
+        for (TransferStatus status : TransferStatus.values()) {
+            if (!status.isSuccessful()) {
+                confirmFailures[status.ordinal()] = Counter.builder("transfer.confirm.failures")
+                        .description("Failed confirmations by reason")
+                        .tag("reason", status.name().toLowerCase(Locale.ROOT))
+                        .register(registry);
+            }
+        }
+        Gauge.builder("transfer.pending.live", transferRepository, repository -> repository.getStats().live())
+                .description("Pending transfers awaiting confirmation")
+                .register(registry);
+        FunctionCounter.builder("transfer.pending.expired", transferRepository, repository -> repository.getStats().expired())
+                .description("Pending transfers expired without confirmation")
+                .register(registry);
+        FunctionCounter.builder("transfer.pending.removed", transferRepository, repository -> repository.getStats().removed())
+                .description("Pending transfers removed before expiry: confirmed or cancelled")
+                .register(registry);
+        FunctionCounter.builder("transfer.pending.rejected", transferRepository, repository -> repository.getStats().rejected())
+                .description("Transfers rejected because the pending store was full")
+                .register(registry);
+    }
+
+    /**
+     * @return текущее значение монотонного таймера для отсчета длительности этапа
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Записывает длительность этапа, начавшегося в момент {@code startedAt}.
+     *
+     * @param stage     этап обработки
+     * @param startedAt момент начала этапа, полученный из {@link #start()} или предыдущего вызова
+     * @return момент окончания этапа, который можно использовать как начало следующего
+     */
+    public long lap(Stage stage, long startedAt) {
+        long now = System.nanoTime();
+        stageTimers[stage.ordinal()].record(now - startedAt, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    /**
+     * Увеличивает счетчик неуспешных подтверждений с указанной причиной.
+     *
+     * @param status статус неуспешного подтверждения
+     */
+    public void confirmFailed(TransferStatus status) {
+        Counter counter = confirmFailures[status.ordinal()];
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
@@ -1,24 +1,65 @@
 package com.karasov.transfer.models;
 
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Objects;
-
-import lombok.EqualsAndHashCode;
-import lombok.Getter;
-import lombok.ToString;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Представляет платежную карту с ассоциированными свойствами и функциональностью.
+ * <p>
+ * Баланс и сумма удержаний изменяются атомарными операциями, поэтому удержание средств
+ * при регистрации перевода не требует блокировок и безопасно выполняется одновременно
+ * с проведением переводов любым {@code TransferLedger}.
+ * <p>
+ * Карта, на которую одновременно зачисляют много отправителей (например, карта продавца),
+ * может накапливать зачисления в распределенных по ядрам ячейках {@link LongAdder} вместо
+ * одного поля баланса. Такой режим включается явно ({@link #stripeCredits()}) или автоматически,
+ * когда количество неудачных CAS при зачислении за {@link #HOT_CONTENTION_WINDOW_NANOS} достигает
+ * {@link #HOT_CONTENTION_THRESHOLD}. Автоматически включенный режим выключается при первом чтении
+ * баланса или списании по прошествии того же окна; если конкуренция сохраняется, карта снова
+ * переключится в горячий режим в следующем окне. Накопленные зачисления переносятся в баланс
+ * при чтении баланса и перед списанием, поэтому списание по-прежнему проверяет точный баланс
+ * и не может увести его в минус.
  */
 @Getter
 @ToString
 @EqualsAndHashCode
 public class Card {
 
+    /**
+     * Количество неудачных CAS при зачислении за окно {@link #HOT_CONTENTION_WINDOW_NANOS},
+     * после которого зачисления на карту распределяются по ячейкам.
+     */
+    public static final int HOT_CONTENTION_THRESHOLD = 256;
+
+    /**
+     * Окно подсчета неудачных CAS и минимальная длительность автоматически включенного горячего режима.
+     */
+    public static final long HOT_CONTENTION_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final VarHandle BALANCE;
+    private static final VarHandle HELD;
+    private static final VarHandle CREDITS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BALANCE = lookup.findVarHandle(Card.class, "balance", long.class);
+            HELD = lookup.findVarHandle(Card.class, "held", long.class);
+            CREDITS = lookup.findVarHandle(Card.class, "credits", LongAdder.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * Номер карты.
      */
@@ -35,11 +76,56 @@ public class Card {
     private final String cvv;
 
     /**
-     * Баланс, доступный на карте.
+     * Баланс, доступный на карте, в копейках.
      * Это поле исключено из вычислений хэш-кода и сравнений.
      */
     @EqualsAndHashCode.Exclude
-    private double balance;
+    private volatile long balance;
+
+    /**
+     * Сумма, удержанная под ожидающие подтверждения переводы, в копейках.
+     * Удержанные средства уже вычтены из доступного баланса.
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile long held;
+
+    /**
+     * Зачисления, еще не перенесенные в баланс; {@code null}, пока карта не в горячем режиме.
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile LongAdder credits;
+
+    /**
+     * {@code true}, если горячий режим включен явно и не выключается.
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile boolean pinnedStriped;
+
+    /**
+     * Время включения горячего режима по {@link System#nanoTime()}.
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile long stripedAt;
+
+    /**
+     * Количество неудачных CAS при зачислении в текущем окне и начало окна. Обновляются без
+     * синхронизации: потерянные приращения только откладывают переключение карты в горячий режим.
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int contention;
+
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private long contentionWindowStart;
 
     /**
      * Создает новую карту с указанными данными.
@@ -47,9 +133,9 @@ public class Card {
      * @param cardNumber номер карты
      * @param validTill  дата истечения срока действия карты
      * @param cvv        CVV карты
-     * @param balance    начальный баланс на карте
+     * @param balance    начальный баланс на карте в копейках
      */
-    public Card(String cardNumber, String validTill, String cvv, double balance) {
+    public Card(String cardNumber, String validTill, String cvv, long balance) {
         this.cardNumber = cardNumber;
         this.validTill = validTill;
         this.cvv = cvv;
@@ -57,35 +143,173 @@ public class Card {
     }
 
     /**
-     * Создает новую карту с указанными данными и начальным балансом 0.0.
+     * Создает новую карту с указанными данными и нулевым начальным балансом.
      *
      * @param cardNumber номер карты
      * @param validTill  дата истечения срока действия карты
      * @param cvv        CVV карты
      */
     public Card(String cardNumber, String validTill, String cvv) {
-        this(cardNumber, validTill, cvv, 0.0);
+        this(cardNumber, validTill, cvv, 0L);
+    }
+
+    /**
+     * Возвращает доступный баланс, предварительно перенеся в него накопленные зачисления.
+     *
+     * @return доступный баланс в копейках
+     */
+    public long getBalance() {
+        foldCredits();
+        return balance;
+    }
+
+    /**
+     * @return {@code true}, если зачисления на карту распределяются по ячейкам
+     */
+    public boolean hasStripedCredits() {
+        return credits != null;
+    }
+
+    /**
+     * Переключает карту в режим распределенных зачислений до конца ее жизни. Повторный вызов ничего не меняет.
+     */
+    public void stripeCredits() {
+        pinnedStriped = true;
+        stripe(System.nanoTime());
     }
 
     /**
      * Пополняет баланс карты на указанную сумму.
+     * <p>
+     * Для горячей карты сумма добавляется в ячейку текущего потока и попадает в баланс
+     * при следующем чтении баланса или списании.
      *
-     * @param amount сумма, которую нужно добавить к балансу
+     * @param amount сумма в копейках, которую нужно добавить к балансу
+     * @throws ArithmeticException если баланс переполнится
      */
-    public void refillBalance(double amount) {
-        balance += amount;
+    public void refillBalance(long amount) {
+        LongAdder striped = credits;
+        if (striped != null) {
+            striped.add(amount);
+            if (credits != striped) {
+                // Режим выключен во время зачисления: ячейки могли быть перенесены в баланс раньше.
+                drain(striped);
+            }
+            return;
+        }
+        long current = balance;
+        while (!BALANCE.compareAndSet(this, current, Math.addExact(current, amount))) {
+            recordContention();
+            current = balance;
+        }
     }
 
     /**
      * Снимает деньги с баланса карты.
      * Снятие происходит только в случае наличия достаточного баланса.
      *
-     * @param money сумма денег для снятия
+     * @param money сумма денег для снятия в копейках
+     * @return {@code true}, если деньги сняты; {@code false}, если баланса недостаточно
      */
-    public void withdrawMoney(double money) {
-        if (balance >= money) {
-            balance -= money;
+    public boolean withdrawMoney(long money) {
+        foldCredits();
+        long current;
+        do {
+            current = balance;
+            if (current < money) {
+                return false;
+            }
+        } while (!BALANCE.compareAndSet(this, current, current - money));
+        return true;
+    }
+
+    /**
+     * Удерживает сумму под перевод: списывает ее с доступного баланса и учитывает как удержанную.
+     *
+     * @param amount сумма в копейках
+     * @return {@code true}, если сумма удержана; {@code false}, если доступного баланса недостаточно
+     */
+    public boolean hold(long amount) {
+        if (!withdrawMoney(amount)) {
+            return false;
         }
+        HELD.getAndAdd(this, amount);
+        return true;
+    }
+
+    /**
+     * Списывает ранее удержанную сумму окончательно. Не может завершиться отказом.
+     *
+     * @param amount сумма в копейках, ранее удержанная {@link #hold(long)}
+     */
+    public void captureHold(long amount) {
+        HELD.getAndAdd(this, -amount);
+    }
+
+    /**
+     * Снимает удержание и возвращает сумму в доступный баланс.
+     *
+     * @param amount сумма в копейках, ранее удержанная {@link #hold(long)}
+     */
+    public void releaseHold(long amount) {
+        HELD.getAndAdd(this, -amount);
+        refillBalance(amount);
     }
-}
 
+    private void recordContention() {
+        long now = System.nanoTime();
+        if (now - contentionWindowStart > HOT_CONTENTION_WINDOW_NANOS) {
+            contentionWindowStart = now;
+            contention = 0;
+        }
+        if (++contention == HOT_CONTENTION_THRESHOLD) {
+            stripe(now);
+        }
+    }
+
+    private void stripe(long now) {
+        if (credits == null) {
+            stripedAt = now;
+            CREDITS.compareAndSet(this, null, new LongAdder());
+        }
+    }
+
+    /**
+     * Переносит накопленные в ячейках зачисления в баланс. Автоматически включенный горячий режим
+     * выключается, если с его включения прошло окно {@link #HOT_CONTENTION_WINDOW_NANOS}.
+     */
+    private void foldCredits() {
+        LongAdder striped = credits;
+        if (striped == null) {
+            return;
+        }
+        if (!pinnedStriped
+                && System.nanoTime() - stripedAt > HOT_CONTENTION_WINDOW_NANOS
+                && CREDITS.compareAndSet(this, striped, null)) {
+            contention = 0;
+        }
+        drain(striped);
+    }
+
+    /**
+     * Переносит зачисления из ячеек в баланс. Зачисления, добавленные во время переноса,
+     * остаются в ячейках до следующего переноса и не теряются: каждую ячейку обнуляет
+     * атомарно ровно один перенос.
+     */
+    private void drain(LongAdder striped) {
+        long folded = striped.sumThenReset();
+        if (folded == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = balance;
+            if (current > Long.MAX_VALUE - folded) {
+                striped.add(folded);
+                // Ячейки могли быть отключены: возвращаем их, чтобы сумма не потерялась.
+                CREDITS.compareAndSet(this, null, striped);
+                throw new ArithmeticException("long overflow");
+            }
+        } while (!BALANCE.compareAndSet(this, current, current + folded));
+    }
+}
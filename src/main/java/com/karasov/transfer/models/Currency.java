@@ -0,0 +1,34 @@
+package com.karasov.transfer.models;
+
+/**
+ * Валюта перевода.
+ * <p>
+ * Код валюты из запроса преобразуется в значение перечисления один раз, при преобразовании
+ * запроса, после чего валюта сравнивается по ссылке и служит индексом в таблице курсов.
+ * Суммы во всех валютах передаются в сотых долях (копейках, центах), балансы карт хранятся в рублях.
+ */
+public enum Currency {
+    RUR,
+    USD,
+    EUR,
+    CNY;
+
+    /**
+     * Находит валюту по коду без создания объектов.
+     *
+     * @param code код валюты; {@code RUB} принимается как синоним {@code RUR}
+     * @return валюта или {@code null}, если код не поддерживается
+     */
+    public static Currency of(String code) {
+        if (code == null) {
+            return null;
+        }
+        return switch (code) {
+            case "RUR", "RUB" -> RUR;
+            case "USD" -> USD;
+            case "EUR" -> EUR;
+            case "CNY" -> CNY;
+            default -> null;
+        };
+    }
+}
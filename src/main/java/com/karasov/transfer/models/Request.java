@@ -1,10 +1,14 @@
 package com.karasov.transfer.models;
 
+import com.karasov.transfer.utils.HierarchicalTimingWheel;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Представляет запрос на перевод денег с одной карты на другую.
  */
@@ -38,22 +42,108 @@ public class Request {
      * Уникальный идентификатор запроса.
      */
     @Setter
-    private String id;
+    private long id;
+
+    /**
+     * Время истечения срока подтверждения запроса в миллисекундах.
+     */
+    @Setter
+    private long expiresAt;
+
+    /**
+     * Таймер истечения срока подтверждения в колесе таймеров хранилища ожидающих запросов;
+     * {@code null}, пока запрос не попал в колесо. Изменяется только потоком планировщика хранилища.
+     */
+    @Setter
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private HierarchicalTimingWheel.Timer<Request> expirationTimer;
+
+    /**
+     * Карта отправителя из репозитория, на которой удержана сумма перевода.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Card sourceCard;
+
+    /**
+     * Карта получателя из репозитория.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Card targetCard;
+
+    /**
+     * Сумма перевода, конвертированная в рубли, в копейках.
+     */
+    private long convertedAmount;
+
+    /**
+     * Удержанная сумма перевода с учетом комиссии в копейках.
+     */
+    private long heldAmount;
+
+    /**
+     * Количество попыток подтверждения с неверным кодом.
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final AtomicInteger failedCodeAttempts = new AtomicInteger();
 
     /**
      * Создает новый запрос на перевод с указанной карты на другую карту.
      *
      * @param cardFrom      карта, с которой осуществляется перевод
      * @param cardToNumber  номер карты, на которую осуществляется перевод
-     * @param paymentValue  сумма перевода
-     * @param currency      валюта перевода
+     * @param paymentValue  сумма перевода в сотых долях валюты
+     * @param currency      валюта перевода; {@code null}, если код валюты не поддерживается
      */
-    public Request(Card cardFrom, String cardToNumber, double paymentValue, String currency) {
+    public Request(Card cardFrom, String cardToNumber, long paymentValue, Currency currency) {
         this.cardFrom = cardFrom;
         this.cardToNumber = cardToNumber;
         this.payment = new Payment(paymentValue, currency);
     }
 
+    /**
+     * Удерживает сумму перевода на карте отправителя до подтверждения.
+     *
+     * @param sourceCard      карта отправителя из репозитория
+     * @param targetCard      карта получателя из репозитория
+     * @param convertedAmount сумма перевода в рублях в копейках
+     * @param heldAmount      сумма перевода с учетом комиссии в копейках
+     * @return {@code true}, если сумма удержана; {@code false}, если доступного баланса недостаточно
+     */
+    public boolean hold(Card sourceCard, Card targetCard, long convertedAmount, long heldAmount) {
+        if (!sourceCard.hold(heldAmount)) {
+            return false;
+        }
+        this.sourceCard = sourceCard;
+        this.targetCard = targetCard;
+        this.convertedAmount = convertedAmount;
+        this.heldAmount = heldAmount;
+        return true;
+    }
+
+    /**
+     * Учитывает попытку подтверждения с неверным кодом.
+     *
+     * @return количество неверных попыток с учетом этой
+     */
+    public int registerFailedCodeAttempt() {
+        return failedCodeAttempts.incrementAndGet();
+    }
+
+    /**
+     * Снимает удержание, если оно было установлено. Вызывается тем, кто удалил запрос
+     * из репозитория без проведения перевода, поэтому удержание снимается не более одного раза.
+     */
+    public void releaseHold() {
+        if (sourceCard != null) {
+            sourceCard.releaseHold(heldAmount);
+        }
+    }
+
     /**
      * Представляет информацию о платеже, включая сумму и валюту.
      */
@@ -62,22 +152,22 @@ public class Request {
     @EqualsAndHashCode
     public class Payment {
         /**
-         * Сумма перевода.
+         * Сумма перевода в сотых долях валюты.
          */
-        private final double paymentValue;
+        private final long paymentValue;
 
         /**
          * Валюта перевода.
          */
-        private final String currency;
+        private final Currency currency;
 
         /**
          * Создает новый объект Payment с указанной суммой и валютой.
          *
-         * @param paymentValue сумма перевода
+         * @param paymentValue сумма перевода в сотых долях валюты
          * @param currency     валюта перевода
          */
-        public Payment(double paymentValue, String currency) {
+        public Payment(long paymentValue, Currency currency) {
             this.paymentValue = paymentValue;
             this.currency = currency;
         }
@@ -0,0 +1,226 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.TransferJournal.RecordType;
+import com.karasov.transfer.utils.LongHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Снимок изменений балансов карт, накопленных журналом переводов до сегмента {@link #nextSegment()}.
+ * <p>
+ * Снимок строится свертыванием записей закрытых сегментов журнала и не обращается к картам,
+ * поэтому не останавливает проведение переводов. Для каждой карты хранится итоговое изменение
+ * баланса в копейках относительно каталога карт, а также списания между шардами, для которых
+ * еще нет записи о зачислении.
+ * <p>
+ * Формат файла: заголовок {@value #HEADER_SIZE} байт (сигнатура, версия, номер следующего сегмента,
+ * количество карт и списаний, CRC32C тела), затем записи карт по {@value #CARD_SIZE} байт
+ * (номер, изменение баланса) и списаний по {@value #DEBIT_SIZE} байт. При загрузке файл
+ * отображается в память, поэтому время загрузки определяется размером снимка, а не историей переводов.
+ */
+@Slf4j
+final class BalanceSnapshot {
+
+    static final String SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x42534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int CARD_SIZE = 16;
+    private static final int DEBIT_SIZE = 32;
+
+    private final LongHashMap<long[]> deltas;
+    private final Map<Long, Debit> openDebits;
+    private long nextSegment;
+
+    private BalanceSnapshot(long nextSegment, int expectedCards) {
+        this.nextSegment = nextSegment;
+        this.deltas = new LongHashMap<>(expectedCards);
+        this.openDebits = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return номер первого сегмента журнала, не учтенного в снимке
+     */
+    long nextSegment() {
+        return nextSegment;
+    }
+
+    void nextSegment(long nextSegment) {
+        this.nextSegment = nextSegment;
+    }
+
+    /**
+     * @return списания между шардами без записи о зачислении
+     */
+    Collection<Debit> openDebits() {
+        return openDebits.values();
+    }
+
+    /**
+     * Учитывает в снимке запись журнала.
+     */
+    void fold(RecordType type, long operationId, long cardFrom, long cardTo, long amount) {
+        switch (type) {
+            case TRANSFER -> {
+                add(cardFrom, -amount);
+                add(cardTo, amount);
+            }
+            case DEBIT -> {
+                add(cardFrom, -amount);
+                openDebits.put(operationId, new Debit(operationId, cardFrom, cardTo, amount));
+            }
+            case CREDIT -> {
+                add(cardTo, amount);
+                openDebits.remove(operationId);
+            }
+        }
+    }
+
+    private void add(long cardNumber, long amount) {
+        long[] delta = deltas.get(cardNumber);
+        if (delta == null) {
+            deltas.put(cardNumber, new long[]{amount});
+        } else {
+            delta[0] += amount;
+        }
+    }
+
+    /**
+     * Применяет накопленные изменения к балансам карт.
+     */
+    void applyTo(CardRepository cardRepository) {
+        deltas.forEach((delta, cardNumber) -> {
+            Card card = cardRepository.getCardByNumber(cardNumber);
+            if (card == null) {
+                log.warn("Skipping balance change for unknown card {}", cardNumber);
+            } else if (delta[0] > 0) {
+                card.refillBalance(delta[0]);
+            } else if (delta[0] < 0) {
+                card.withdrawMoney(-delta[0]);
+            }
+        });
+    }
+
+    /**
+     * Записывает снимок во временный файл и атомарно переименовывает его в {@code <nextSegment>.snapshot}.
+     *
+     * @param directory каталог журнала
+     * @return путь к записанному снимку
+     */
+    Path write(Path directory) throws IOException {
+        long size = HEADER_SIZE + (long) deltas.size() * CARD_SIZE + (long) openDebits.size() * DEBIT_SIZE;
+        Path target = path(directory, nextSegment);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(HEADER_SIZE);
+            deltas.forEach((delta, cardNumber) -> buffer.putLong(cardNumber).putLong(delta[0]));
+            for (Debit debit : openDebits.values()) {
+                buffer.putLong(debit.operationId())
+                        .putLong(debit.cardFrom())
+                        .putLong(debit.cardTo())
+                        .putLong(debit.amount());
+            }
+            buffer.putInt(0, MAGIC)
+                    .putInt(4, VERSION)
+                    .putLong(8, nextSegment)
+                    .putInt(16, deltas.size())
+                    .putInt(20, openDebits.size())
+                    .putInt(24, checksum(buffer, size));
+            buffer.force();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Загружает последний корректный снимок из каталога журнала.
+     *
+     * @param directory каталог журнала
+     * @return загруженный снимок или пустой снимок, начинающийся с нулевого сегмента
+     */
+    static BalanceSnapshot loadLatest(Path directory) throws IOException {
+        List<Path> snapshots = list(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path path = snapshots.get(i);
+            BalanceSnapshot snapshot = load(path);
+            if (snapshot != null) {
+                return snapshot;
+            }
+            log.warn("Ignoring corrupted balance snapshot {}", path);
+        }
+        return new BalanceSnapshot(0, 0);
+    }
+
+    /**
+     * @return снимки в каталоге журнала в порядке возрастания номера сегмента
+     */
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static BalanceSnapshot load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int cards = buffer.getInt(16);
+            int debits = buffer.getInt(20);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || cards < 0 || debits < 0
+                    || size != HEADER_SIZE + (long) cards * CARD_SIZE + (long) debits * DEBIT_SIZE
+                    || buffer.getInt(24) != checksum(buffer, size)) {
+                return null;
+            }
+            BalanceSnapshot snapshot = new BalanceSnapshot(buffer.getLong(8), cards);
+            int position = HEADER_SIZE;
+            for (int i = 0; i < cards; i++, position += CARD_SIZE) {
+                snapshot.deltas.put(buffer.getLong(position), new long[]{buffer.getLong(position + 8)});
+            }
+            for (int i = 0; i < debits; i++, position += DEBIT_SIZE) {
+                Debit debit = new Debit(buffer.getLong(position), buffer.getLong(position + 8),
+                        buffer.getLong(position + 16), buffer.getLong(position + 24));
+                snapshot.openDebits.put(debit.operationId(), debit);
+            }
+            log.info("Loaded balance snapshot {}: {} cards, {} open debits", path.getFileName(), cards, debits);
+            return snapshot;
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, long size) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_SIZE, (int) (size - HEADER_SIZE)));
+        return (int) crc.getValue();
+    }
+
+    static Path path(Path directory, long nextSegment) {
+        return directory.resolve(String.format("%019d%s", nextSegment, SUFFIX));
+    }
+
+    /**
+     * Списание между шардами.
+     */
+    record Debit(long operationId, long cardFrom, long cardTo, long amount) {
+    }
+}
@@ -0,0 +1,234 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.utils.CardNumbers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Каталог карт, загруженный из бинарного файла фиксированного формата.
+ * <p>
+ * Каждая запись файла занимает {@value #RECORD_SIZE} байт: номер карты ({@code long}),
+ * баланс в копейках ({@code long}), срок действия в формате MMYY ({@code int}) и CVV ({@code int}).
+ * Файл отображается в память частями и разбирается параллельно в {@link ForkJoinPool}
+ * в колонки примитивных массивов, без создания строк и объектов на запись. Поиск выполняется
+ * по таблице с открытой адресацией «номер карты → номер строки». Номер карты — любое 16-значное
+ * число, в том числе с ведущими нулями, поэтому пустые строки и ячейки таблицы отмечаются
+ * значением {@link CardNumbers#INVALID}, а не нулем.
+ * <p>
+ * Объект {@link Card} создается при первом обращении к карте и далее возвращается тот же,
+ * поэтому изменения баланса сохраняются. Каталог рассчитан на десятки миллионов карт:
+ * память на карту — около 50 байт до первого обращения.
+ */
+@Slf4j
+final class CardCatalog {
+
+    static final int RECORD_SIZE = 24;
+    private static final long MAX_CARD_NUMBER = 9_999_999_999_999_999L;
+    private static final long EMPTY = CardNumbers.INVALID;
+    private static final int ROWS_PER_TASK = 1 << 16;
+    private static final int ROWS_PER_MAPPING = (Integer.MAX_VALUE / RECORD_SIZE) & ~(ROWS_PER_TASK - 1);
+
+    private final long[] numbers;
+    private final long[] balances;
+    private final short[] validTill;
+    private final short[] cvv;
+    private final AtomicReferenceArray<Card> materialized;
+    private final long[] indexKeys;
+    private final int[] indexRows;
+    private final int indexShift;
+    private final int indexMask;
+    private int size;
+
+    private CardCatalog(int rows) {
+        numbers = new long[rows];
+        Arrays.fill(numbers, EMPTY);
+        balances = new long[rows];
+        validTill = new short[rows];
+        cvv = new short[rows];
+        materialized = new AtomicReferenceArray<>(rows);
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(rows + rows / 3, 1)) << 1);
+        indexKeys = new long[capacity];
+        Arrays.fill(indexKeys, EMPTY);
+        indexRows = new int[capacity];
+        indexShift = 64 - Integer.numberOfTrailingZeros(capacity);
+        indexMask = capacity - 1;
+    }
+
+    /**
+     * Загружает каталог из файла.
+     *
+     * @param file        файл каталога
+     * @param parallelism количество потоков разбора; 0 — по количеству процессоров
+     * @return загруженный каталог
+     */
+    static CardCatalog load(Path file, int parallelism) throws IOException {
+        long startedAt = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long rows = channel.size() / RECORD_SIZE;
+            if (rows > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Card catalog is too large: " + rows + " records");
+            }
+            CardCatalog catalog = new CardCatalog((int) rows);
+            ForkJoinPool pool = parallelism == 0 ? new ForkJoinPool() : new ForkJoinPool(parallelism);
+            try {
+                for (int from = 0; from < rows; from += ROWS_PER_MAPPING) {
+                    int to = (int) Math.min(rows, (long) from + ROWS_PER_MAPPING);
+                    MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY,
+                            (long) from * RECORD_SIZE, (long) (to - from) * RECORD_SIZE);
+                    pool.invoke(catalog.new ParseTask(mapping, from, 0, to - from));
+                }
+            } finally {
+                pool.shutdown();
+            }
+            long parsedAt = System.nanoTime();
+            catalog.buildIndex();
+            long finishedAt = System.nanoTime();
+            log.info("Card catalog {} loaded: {} cards ({} skipped) in {} ms (parse {} ms, index {} ms), "
+                            + "{} cards/s, {} MB",
+                    file.getFileName(), catalog.size, rows - catalog.size,
+                    (finishedAt - startedAt) / 1_000_000, (parsedAt - startedAt) / 1_000_000,
+                    (finishedAt - parsedAt) / 1_000_000,
+                    rows * 1_000_000_000L / Math.max(finishedAt - startedAt, 1),
+                    catalog.footprint() >> 20);
+            return catalog;
+        }
+    }
+
+    /**
+     * Получает карту по номеру, создавая объект {@link Card} при первом обращении.
+     *
+     * @param number номер карты
+     * @return карта или {@code null}, если ее нет в каталоге
+     */
+    Card get(long number) {
+        int row = row(number);
+        if (row < 0) {
+            return null;
+        }
+        Card card = materialized.get(row);
+        if (card != null) {
+            return card;
+        }
+        card = new Card(
+                CardNumbers.format(numbers[row]),
+                fourDigits(validTill[row]),
+                threeDigits(cvv[row]),
+                balances[row]);
+        return materialized.compareAndSet(row, null, card) ? card : materialized.get(row);
+    }
+
+    /**
+     * @return количество карт в каталоге
+     */
+    int size() {
+        return size;
+    }
+
+    private int row(long number) {
+        long[] keys = indexKeys;
+        for (int i = slot(number); ; i = (i + 1) & indexMask) {
+            long key = keys[i];
+            if (key == number) {
+                return indexRows[i];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void buildIndex() {
+        for (int row = 0; row < numbers.length; row++) {
+            long number = numbers[row];
+            if (number == EMPTY) {
+                continue;
+            }
+            int i = slot(number);
+            while (indexKeys[i] != EMPTY && indexKeys[i] != number) {
+                i = (i + 1) & indexMask;
+            }
+            if (indexKeys[i] == EMPTY) {
+                size++;
+            }
+            indexKeys[i] = number;
+            indexRows[i] = row;
+        }
+    }
+
+    private int slot(long number) {
+        return (int) ((number * 0x9E3779B97F4A7C15L) >>> indexShift);
+    }
+
+    private long footprint() {
+        long rows = numbers.length;
+        return rows * (8 + 8 + 2 + 2 + 4) + (long) indexKeys.length * (8 + 4);
+    }
+
+    private static String fourDigits(int value) {
+        return new String(new char[]{
+                (char) ('0' + value / 1000 % 10),
+                (char) ('0' + value / 100 % 10),
+                (char) ('0' + value / 10 % 10),
+                (char) ('0' + value % 10)});
+    }
+
+    private static String threeDigits(int value) {
+        return new String(new char[]{
+                (char) ('0' + value / 100 % 10),
+                (char) ('0' + value / 10 % 10),
+                (char) ('0' + value % 10)});
+    }
+
+    /**
+     * Разбор диапазона записей одного отображения файла в колонки каталога.
+     * Диапазоны строк не пересекаются, поэтому задачи пишут в массивы без синхронизации.
+     */
+    private final class ParseTask extends RecursiveAction {
+        private final MappedByteBuffer mapping;
+        private final int firstRow;
+        private final int from;
+        private final int to;
+
+        private ParseTask(MappedByteBuffer mapping, int firstRow, int from, int to) {
+            this.mapping = mapping;
+            this.firstRow = firstRow;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(mapping, firstRow, from, middle),
+                        new ParseTask(mapping, firstRow, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int offset = i * RECORD_SIZE;
+                int row = firstRow + i;
+                long number = mapping.getLong(offset);
+                int till = mapping.getInt(offset + 16);
+                int code = mapping.getInt(offset + 20);
+                if (number < 0 || number > MAX_CARD_NUMBER
+                        || till < 0 || till > 9999 || code < 0 || code > 999) {
+                    continue;
+                }
+                numbers[row] = number;
+                balances[row] = mapping.getLong(offset + 8);
+                validTill[row] = (short) till;
+                cvv[row] = (short) code;
+            }
+        }
+    }
+}
@@ -6,4 +6,8 @@ public interface CardRepository {
 
     Card getCardByNumber(String number);
 
+    Card getCardByNumber(long number);
+
+    void addCard(Card card);
+
 }
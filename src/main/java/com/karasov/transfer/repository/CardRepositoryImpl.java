@@ -1,42 +1,92 @@
 package com.karasov.transfer.repository;
 
 import com.karasov.transfer.models.Card;
+import com.karasov.transfer.utils.CardNumbers;
+import com.karasov.transfer.utils.LongHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
-import java.util.Set;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 
 /**
  * Реализация интерфейса {@link CardRepository}, предоставляющая методы для работы с картами.
  * <p>
- * Данный класс содержит фиксированный набор карт, и предоставляет возможность
- * получения карты по номеру карты.
+ * Карты хранятся в хэш-таблице {@link LongHashMap} с открытой адресацией, ключом которой
+ * является номер карты в виде {@code long}. Поиск карты выполняется за O(1) без создания
+ * строк и упаковки ключей. Репозиторий заполняется фиксированным набором карт при создании.
+ * <p>
+ * Если задано свойство {@code transfer.catalog.file}, дополнительно загружается каталог карт
+ * {@link CardCatalog} из бинарного файла; карты, добавленные через {@link #addCard(Card)},
+ * имеют приоритет над картами каталога.
+ * <p>
+ * Карты, перечисленные в свойстве {@code transfer.cards.hot}, сразу переводятся в режим
+ * распределенных зачислений ({@link Card#stripeCredits()}); остальные карты переключаются
+ * в него сами при высокой конкуренции зачислений.
  */
 @Repository
 public class CardRepositoryImpl implements CardRepository {
 
-    private final Set<Card> cards;
+    private final LongHashMap<Card> cards = new LongHashMap<>();
+    private final CardCatalog catalog;
 
     {
-        cards = Set.of(
-                new Card(
-                        "1111111111111111",
-                        "1231",
-                        "111",
-                        1000.0
-                ),
-                new Card(
-                        "2222222222222222",
-                        "1232",
-                        "222",
-                        2000.0
-                ),
-                new Card(
-                        "3333333333333333",
-                        "1233",
-                        "333",
-                        3000.0
-                )
-        );
+        addCard(new Card(
+                "1111111111111111",
+                "1231",
+                "111",
+                100_000L
+        ));
+        addCard(new Card(
+                "2222222222222222",
+                "1232",
+                "222",
+                200_000L
+        ));
+        addCard(new Card(
+                "3333333333333333",
+                "1233",
+                "333",
+                300_000L
+        ));
+    }
+
+    /**
+     * Создает репозиторий только с фиксированным набором карт.
+     */
+    public CardRepositoryImpl() {
+        this.catalog = null;
+    }
+
+    /**
+     * Создает репозиторий, загружает каталог карт и отмечает горячие карты.
+     *
+     * @param catalogFile            файл каталога карт; пустое значение — без каталога
+     * @param catalogLoadParallelism количество потоков разбора каталога; 0 — по количеству процессоров
+     * @param hotCards               номера карт с распределенными зачислениями
+     */
+    @Autowired
+    public CardRepositoryImpl(@Value("${transfer.catalog.file:}") String catalogFile,
+                              @Value("${transfer.catalog.load-parallelism:0}") int catalogLoadParallelism,
+                              @Value("${transfer.cards.hot:}") String[] hotCards) {
+        this.catalog = catalogFile.isBlank() ? null : loadCatalog(catalogFile, catalogLoadParallelism);
+        for (String hotCard : hotCards) {
+            Card card = getCardByNumber(hotCard.trim());
+            if (card == null) {
+                throw new IllegalArgumentException("Unknown hot card: " + hotCard);
+            }
+            card.stripeCredits();
+        }
+    }
+
+    private static CardCatalog loadCatalog(String catalogFile, int catalogLoadParallelism) {
+        try {
+            return CardCatalog.load(Path.of(catalogFile), catalogLoadParallelism);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load card catalog " + catalogFile, e);
+        }
     }
 
     /**
@@ -45,12 +95,42 @@ public class CardRepositoryImpl implements CardRepository {
      * @param number номер карты для поиска
      * @return {@link Card} объект, если карта найдена; {@code null}, если карта с указанным номером не найдена
      */
+    @Override
     public Card getCardByNumber(String number) {
-        for (Card card : cards) {
-            if (card.getCardNumber().equals(number)) {
-                return card;
-            }
+        long key = CardNumbers.parse(number);
+        return key == CardNumbers.INVALID ? null : getCardByNumber(key);
+    }
+
+    /**
+     * Получает карту по номеру карты в примитивном представлении.
+     *
+     * @param number номер карты для поиска
+     * @return {@link Card} объект, если карта найдена; {@code null}, если карта с указанным номером не найдена
+     */
+    @Override
+    public Card getCardByNumber(long number) {
+        Card card = cards.get(number);
+        if (card == null && catalog != null) {
+            return catalog.get(number);
+        }
+        return card;
+    }
+
+    /**
+     * Добавляет карту в репозиторий.
+     * <p>
+     * Метод предназначен для заполнения репозитория до начала обработки запросов
+     * и не должен вызываться конкурентно с поиском.
+     *
+     * @param card карта для добавления
+     * @throws IllegalArgumentException если номер карты не состоит из 16 цифр
+     */
+    @Override
+    public void addCard(Card card) {
+        long key = CardNumbers.parse(card.getCardNumber());
+        if (key == CardNumbers.INVALID) {
+            throw new IllegalArgumentException("Invalid card number: " + card.getCardNumber());
         }
-        return null;
+        cards.put(key, card);
     }
 }
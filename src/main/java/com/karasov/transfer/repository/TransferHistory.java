@@ -0,0 +1,52 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.dto.TransferStatus;
+
+public interface TransferHistory {
+
+    /**
+     * Позиция, с которой история читается от самой новой операции.
+     */
+    long FIRST_PAGE = -1L;
+
+    void record(long operationId, long cardFrom, long cardTo, long amount, long commission, TransferStatus status);
+
+    Cursor history(long cardNumber, long fromMillis, long toMillis, long after);
+
+    /**
+     * Последовательное чтение операций карты от новых к старым. Поля текущей операции
+     * доступны после успешного {@link #next()}; объект не создает новых объектов при чтении.
+     */
+    interface Cursor {
+
+        /**
+         * @return {@code true}, если прочитана следующая операция
+         */
+        boolean next();
+
+        /**
+         * @return позиция операции в хранилище; передается как {@code after} для чтения следующей страницы
+         */
+        long position();
+
+        long operationId();
+
+        long timestamp();
+
+        /**
+         * @return {@code true}, если карта — отправитель операции
+         */
+        boolean outgoing();
+
+        long counterparty();
+
+        long amount();
+
+        /**
+         * @return комиссия, списанная с отправителя; 0, если перевод не проведен
+         */
+        long commission();
+
+        TransferStatus status();
+    }
+}
@@ -0,0 +1,350 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.dto.TransferStatus;
+import com.karasov.transfer.utils.ConcurrentLongHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Реализация интерфейса {@link TransferHistory}, хранящая историю операций в памяти по столбцам.
+ * <p>
+ * Каждая операция занимает одну строку: идентификатор, время, номера карт отправителя и получателя,
+ * сумма, комиссия, статус и две ссылки на предыдущие строки тех же карт — 65 байт в примитивных
+ * массивах, без объекта на операцию. Для каждой карты хранится только номер ее последней строки,
+ * а строки одной карты связаны в список от новых к старым, поэтому чтение истории карты
+ * не просматривает чужие операции.
+ * <p>
+ * Хранилище разбито на {@code transfer.history.shards} шардов по хэшу номера карты; вся история
+ * карты находится в одном шарде. Операция карт из разных шардов записывается строкой в каждый
+ * из них. Строки шарда хранятся блоками по {@value #CHUNK_SIZE}; шард ограничен своей долей
+ * {@code transfer.history.max-entries} строк, и когда место заканчивается, самый старый блок
+ * используется повторно. Добавление строк выполняется под блокировкой шарда, поэтому
+ * подтверждения по картам разных шардов не ждут друг друга. Чтение выполняется без блокировок:
+ * читатель проверяет после чтения строки, что ее блок не был переиспользован, и завершает чтение,
+ * дойдя до вытесненных строк.
+ */
+@Repository
+public class TransferHistoryImpl implements TransferHistory {
+
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long NONE = -1L;
+    private static final TransferStatus[] STATUSES = TransferStatus.values();
+
+    private final Shard[] shards;
+
+    /**
+     * @param maxEntries количество хранимых строк; делится между шардами и округляется вверх до целого числа блоков
+     * @param shardCount количество шардов; 0 — по количеству процессоров
+     */
+    public TransferHistoryImpl(@Value("${transfer.history.max-entries:10000000}") long maxEntries,
+                               @Value("${transfer.history.shards:0}") int shardCount) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("History size must be positive: " + maxEntries);
+        }
+        if (shardCount < 0) {
+            throw new IllegalArgumentException("Shard count must not be negative: " + shardCount);
+        }
+        int count = shardCount == 0 ? Runtime.getRuntime().availableProcessors() : shardCount;
+        long shardEntries = (maxEntries + count - 1) / count;
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(shardEntries);
+        }
+    }
+
+    /**
+     * Добавляет операцию в историю карт отправителя и получателя.
+     *
+     * @param operationId идентификатор операции
+     * @param cardFrom    номер карты отправителя
+     * @param cardTo      номер карты получателя
+     * @param amount      сумма перевода в копейках
+     * @param commission  списанная комиссия в копейках
+     * @param status      результат подтверждения
+     */
+    @Override
+    public void record(long operationId, long cardFrom, long cardTo, long amount, long commission,
+                       TransferStatus status) {
+        Shard from = shardOf(cardFrom);
+        Shard to = shardOf(cardTo);
+        from.append(operationId, cardFrom, cardTo, amount, commission, status, true, to == from);
+        if (to != from) {
+            to.append(operationId, cardFrom, cardTo, amount, commission, status, false, true);
+        }
+    }
+
+    /**
+     * Открывает чтение истории карты от новых операций к старым.
+     *
+     * @param cardNumber номер карты
+     * @param fromMillis начало периода включительно, миллисекунды эпохи
+     * @param toMillis   конец периода не включительно, миллисекунды эпохи
+     * @param after      позиция последней операции предыдущей страницы или {@link #FIRST_PAGE}
+     * @return курсор; пустой, если позиция вытеснена или не относится к карте
+     */
+    @Override
+    public Cursor history(long cardNumber, long fromMillis, long toMillis, long after) {
+        Shard shard = shardOf(cardNumber);
+        long start;
+        if (after == FIRST_PAGE) {
+            CardHead head = shard.heads.get(cardNumber);
+            start = head == null ? NONE : head.row;
+        } else {
+            start = after >= 0 && after < shard.size ? shard.previous(after, cardNumber) : NONE;
+        }
+        return new RowCursor(shard, cardNumber, fromMillis, toMillis, start);
+    }
+
+    /**
+     * Удаляет указатели на карты, все операции которых вытеснены.
+     */
+    @Scheduled(fixedDelayString = "${transfer.history.eviction-interval:PT1M}")
+    public void evictStaleCards() {
+        for (Shard shard : shards) {
+            shard.evictStaleCards();
+        }
+    }
+
+    private Shard shardOf(long cardNumber) {
+        long hash = (cardNumber * 0x9E3779B97F4A7C15L) >>> 32;
+        return shards[(int) ((hash * shards.length) >>> 32)];
+    }
+
+    /**
+     * Строки и указатели на последние строки карт одного шарда.
+     */
+    private static final class Shard {
+        private final Chunk[] chunks;
+        private final ConcurrentLongHashMap<CardHead> heads = new ConcurrentLongHashMap<>(1 << 12);
+        private final ReentrantLock appendLock = new ReentrantLock();
+        private volatile long size;
+        private volatile long firstRetained;
+        private long lastTimestamp;
+
+        private Shard(long maxEntries) {
+            // Один блок заполняется, пока остальные хранят по меньшей мере maxEntries строк.
+            chunks = new Chunk[Math.toIntExact((maxEntries + CHUNK_SIZE - 1) / CHUNK_SIZE + 1)];
+        }
+
+        /**
+         * Добавляет строку и связывает ее со строками тех карт операции, которые принадлежат шарду.
+         */
+        private void append(long operationId, long cardFrom, long cardTo, long amount, long commission,
+                            TransferStatus status, boolean linkFrom, boolean linkTo) {
+            appendLock.lock();
+            try {
+                long row = size;
+                Chunk chunk = chunkForAppend(row);
+                int offset = (int) row & CHUNK_MASK;
+                lastTimestamp = Math.max(lastTimestamp, System.currentTimeMillis());
+                CardHead from = linkFrom ? head(cardFrom) : null;
+                CardHead to = !linkTo ? null : cardTo == cardFrom ? from : head(cardTo);
+                chunk.operationIds[offset] = operationId;
+                chunk.timestamps[offset] = lastTimestamp;
+                chunk.cardsFrom[offset] = cardFrom;
+                chunk.cardsTo[offset] = cardTo;
+                chunk.amounts[offset] = amount;
+                chunk.commissions[offset] = commission;
+                chunk.statuses[offset] = (byte) status.ordinal();
+                chunk.previousFrom[offset] = from == null ? NONE : from.row;
+                chunk.previousTo[offset] = to == null ? NONE : to.row;
+                if (from != null) {
+                    from.row = row;
+                }
+                if (to != null) {
+                    to.row = row;
+                }
+                size = row + 1;
+            } finally {
+                appendLock.unlock();
+            }
+        }
+
+        private void evictStaleCards() {
+            appendLock.lock();
+            try {
+                long retained = firstRetained;
+                heads.removeIf(head -> head.row < retained);
+            } finally {
+                appendLock.unlock();
+            }
+        }
+
+        private Chunk chunkForAppend(long row) {
+            int index = chunkIndex(row);
+            if ((row & CHUNK_MASK) == 0) {
+                if (chunks[index] == null) {
+                    chunks[index] = new Chunk();
+                } else {
+                    // Читатели должны увидеть вытеснение строк блока раньше, чем их перезапись.
+                    firstRetained = row - (long) (chunks.length - 1) * CHUNK_SIZE;
+                    VarHandle.storeStoreFence();
+                }
+            }
+            return chunks[index];
+        }
+
+        private CardHead head(long cardNumber) {
+            CardHead head = heads.get(cardNumber);
+            if (head == null) {
+                head = new CardHead();
+                heads.put(cardNumber, head);
+            }
+            return head;
+        }
+
+        private int chunkIndex(long row) {
+            return (int) ((row >>> CHUNK_BITS) % chunks.length);
+        }
+
+        /**
+         * @return предыдущая строка карты или {@link #NONE}, если строка вытеснена или не относится к карте
+         */
+        private long previous(long row, long cardNumber) {
+            if (row < firstRetained) {
+                return NONE;
+            }
+            Chunk chunk = chunks[chunkIndex(row)];
+            int offset = (int) row & CHUNK_MASK;
+            long previous = chunk.cardsFrom[offset] == cardNumber ? chunk.previousFrom[offset]
+                    : chunk.cardsTo[offset] == cardNumber ? chunk.previousTo[offset]
+                    : NONE;
+            VarHandle.loadLoadFence();
+            return row < firstRetained ? NONE : previous;
+        }
+    }
+
+    /**
+     * Блок строк: по массиву на каждый столбец.
+     */
+    private static final class Chunk {
+        private final long[] operationIds = new long[CHUNK_SIZE];
+        private final long[] timestamps = new long[CHUNK_SIZE];
+        private final long[] cardsFrom = new long[CHUNK_SIZE];
+        private final long[] cardsTo = new long[CHUNK_SIZE];
+        private final long[] amounts = new long[CHUNK_SIZE];
+        private final long[] commissions = new long[CHUNK_SIZE];
+        private final long[] previousFrom = new long[CHUNK_SIZE];
+        private final long[] previousTo = new long[CHUNK_SIZE];
+        private final byte[] statuses = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Номер последней строки карты.
+     */
+    private static final class CardHead {
+        private volatile long row = NONE;
+    }
+
+    private static final class RowCursor implements Cursor {
+        private final Shard shard;
+        private final long cardNumber;
+        private final long fromMillis;
+        private final long toMillis;
+        private long next;
+        private long position;
+        private long operationId;
+        private long timestamp;
+        private boolean outgoing;
+        private long counterparty;
+        private long amount;
+        private long commission;
+        private TransferStatus status;
+
+        private RowCursor(Shard shard, long cardNumber, long fromMillis, long toMillis, long start) {
+            this.shard = shard;
+            this.cardNumber = cardNumber;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.next = start;
+        }
+
+        @Override
+        public boolean next() {
+            while (next != NONE) {
+                long row = next;
+                if (row < shard.firstRetained) {
+                    break;
+                }
+                Chunk chunk = shard.chunks[shard.chunkIndex(row)];
+                int offset = (int) row & CHUNK_MASK;
+                long rowTimestamp = chunk.timestamps[offset];
+                long cardFrom = chunk.cardsFrom[offset];
+                long cardTo = chunk.cardsTo[offset];
+                long rowOperationId = chunk.operationIds[offset];
+                long rowAmount = chunk.amounts[offset];
+                long rowCommission = chunk.commissions[offset];
+                byte rowStatus = chunk.statuses[offset];
+                long previous = cardFrom == cardNumber ? chunk.previousFrom[offset] : chunk.previousTo[offset];
+                VarHandle.loadLoadFence();
+                if (row < shard.firstRetained) {
+                    break;
+                }
+                next = previous;
+                if (rowTimestamp >= toMillis) {
+                    continue;
+                }
+                if (rowTimestamp < fromMillis) {
+                    break;
+                }
+                position = row;
+                operationId = rowOperationId;
+                timestamp = rowTimestamp;
+                outgoing = cardFrom == cardNumber;
+                counterparty = outgoing ? cardTo : cardFrom;
+                amount = rowAmount;
+                commission = rowCommission;
+                status = STATUSES[rowStatus];
+                return true;
+            }
+            next = NONE;
+            return false;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public long operationId() {
+            return operationId;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean outgoing() {
+            return outgoing;
+        }
+
+        @Override
+        public long counterparty() {
+            return counterparty;
+        }
+
+        @Override
+        public long amount() {
+            return amount;
+        }
+
+        @Override
+        public long commission() {
+            return commission;
+        }
+
+        @Override
+        public TransferStatus status() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.karasov.transfer.repository;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface TransferJournal {
+
+    CompletableFuture<Void> append(RecordType type, long operationId, long cardFrom, long cardTo, long amount);
+
+    default CompletableFuture<Void> append(long operationId, long cardFrom, long cardTo, long amount) {
+        return append(RecordType.TRANSFER, operationId, cardFrom, cardTo, amount);
+    }
+
+    /**
+     * Ошибка фиксации записи, которая могла остаться в журнале и будет воспроизведена при восстановлении.
+     * Результат операции становится известен только после перезапуска.
+     */
+    class UncertainCommitException extends IllegalStateException {
+
+        public UncertainCommitException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Тип записи журнала.
+     */
+    enum RecordType {
+        /**
+         * Перевод целиком: списание с карты отправителя и зачисление на карту получателя.
+         */
+        TRANSFER(1),
+        /**
+         * Первая половина перевода между картами разных шардов: списание с карты отправителя.
+         */
+        DEBIT(2),
+        /**
+         * Вторая половина перевода между картами разных шардов: зачисление на карту получателя.
+         */
+        CREDIT(3);
+
+        private final int code;
+
+        RecordType(int code) {
+            this.code = code;
+        }
+
+        public int code() {
+            return code;
+        }
+
+        public static RecordType of(int code) {
+            for (RecordType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+}
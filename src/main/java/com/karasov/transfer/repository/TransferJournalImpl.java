@@ -0,0 +1,483 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.models.Card;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Реализация интерфейса {@link TransferJournal}: журнал проведенных переводов в бинарных файлах,
+ * отображенных в память через {@link FileChannel#map}.
+ * <p>
+ * Журнал состоит из сегментов фиксированного размера. Каждая запись занимает {@value #RECORD_SIZE} байт:
+ * тип записи ({@link RecordType}), контрольная сумма CRC32C и пять чисел {@code long} — идентификатор
+ * операции, номера карт отправителя и получателя, сумма в копейках и время проведения.
+ * <p>
+ * Записи добавляются одним потоком-писателем с групповой фиксацией: писатель забирает из очереди
+ * все накопившиеся записи (не более {@code batch-size}, ожидая новые не дольше {@code batch-delay}),
+ * записывает их и выполняет один {@code force} на всю пачку. Вызывающие потоки ожидают
+ * фиксации своей записи через {@link CompletableFuture}.
+ * <p>
+ * Если {@code force} завершился ошибкой, незафиксированные записи пачки стираются, позиция записи
+ * возвращается к началу пачки, и future этих записей завершаются с ошибкой: такие записи никогда
+ * не будут воспроизведены. Если стереть их не удалось, журнал перестает принимать записи, а future
+ * завершаются {@link UncertainCommitException}: записи могут быть воспроизведены при восстановлении.
+ * <p>
+ * При запуске журнал воспроизводится и балансы карт в {@link CardRepository} восстанавливаются.
+ * Воспроизведение останавливается на первой пустой записи или записи с неверной контрольной суммой
+ * во всем журнале: хвост сегмента после нее обнуляется, а последующие сегменты не воспроизводятся
+ * и переименовываются с расширением {@value #DISCARDED_SUFFIX}. Если для записи о списании {@link RecordType#DEBIT}
+ * не найдена запись о зачислении {@link RecordType#CREDIT} (процесс остановился посередине перевода
+ * между шардами), зачисление выполняется при восстановлении и дописывается в журнал.
+ * <p>
+ * Периодически закрытые сегменты сворачиваются в снимок балансов {@link BalanceSnapshot} и удаляются.
+ * Восстановление начинается с последнего снимка и воспроизводит только сегменты после него,
+ * поэтому время запуска не зависит от длины истории переводов.
+ */
+@Slf4j
+@Repository
+public class TransferJournalImpl implements TransferJournal {
+
+    static final int RECORD_SIZE = 48;
+    private static final int PAYLOAD_OFFSET = 8;
+    private static final int PAYLOAD_SIZE = RECORD_SIZE - PAYLOAD_OFFSET;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String DISCARDED_SUFFIX = ".discarded";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int batchSize;
+    private final long batchDelayNanos;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+    private final CRC32C crc = new CRC32C();
+
+    private volatile long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int position;
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    /**
+     * Создает журнал, восстанавливает по нему балансы карт и запускает поток-писатель.
+     *
+     * @param cardRepository репозиторий карт, балансы которых восстанавливаются
+     * @param directory      каталог сегментов журнала
+     * @param segmentSize    размер сегмента
+     * @param batchSize      максимальное количество записей в одной фиксации
+     * @param batchDelay     максимальное время ожидания новых записей для пачки
+     */
+    public TransferJournalImpl(CardRepository cardRepository,
+                               @Value("${transfer.journal.directory:journal}") Path directory,
+                               @Value("${transfer.journal.segment-size:64MB}") DataSize segmentSize,
+                               @Value("${transfer.journal.batch-size:256}") int batchSize,
+                               @Value("${transfer.journal.batch-delay:1ms}") Duration batchDelay) {
+        this.directory = directory;
+        this.segmentSize = (int) (segmentSize.toBytes() / RECORD_SIZE * RECORD_SIZE);
+        this.batchSize = batchSize;
+        this.batchDelayNanos = batchDelay.toNanos();
+        try {
+            Files.createDirectories(directory);
+            recover(cardRepository);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open transfer journal in " + directory, e);
+        }
+        writer = new Thread(this::writeLoop, "transfer-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Добавляет запись в очередь на фиксацию.
+     *
+     * @param type        тип записи
+     * @param operationId идентификатор операции
+     * @param cardFrom    номер карты отправителя
+     * @param cardTo      номер карты получателя
+     * @param amount      сумма перевода в копейках
+     * @return future, завершающийся после фиксации записи на диске
+     */
+    @Override
+    public CompletableFuture<Void> append(RecordType type, long operationId, long cardFrom, long cardTo,
+                                          long amount) {
+        Entry entry = new Entry(type, operationId, cardFrom, cardTo, amount, System.currentTimeMillis(),
+                new CompletableFuture<>());
+        if (!running) {
+            entry.durable().completeExceptionally(new IllegalStateException("Transfer journal is closed"));
+            return entry.durable();
+        }
+        if (failure != null) {
+            entry.durable().completeExceptionally(new IllegalStateException("Transfer journal has failed", failure));
+            return entry.durable();
+        }
+        queue.add(entry);
+        return entry.durable();
+    }
+
+    /**
+     * Останавливает поток-писатель, дождавшись фиксации уже поставленных в очередь записей.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException, IOException {
+        running = false;
+        writer.join();
+        channel.close();
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        boolean interrupted = false;
+        while (!interrupted && (running || !queue.isEmpty())) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void collectBatch(List<Entry> batch) throws InterruptedException {
+        queue.drainTo(batch, batchSize - batch.size());
+        long deadline = System.nanoTime() + batchDelayNanos;
+        while (batch.size() < batchSize) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return;
+            }
+            Entry next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void commit(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (failure != null) {
+            fail(batch, 0, batch.size(), new IllegalStateException("Transfer journal has failed", failure));
+            return;
+        }
+        int from = position;
+        int durable = 0;
+        int written = 0;
+        try {
+            for (Entry entry : batch) {
+                if (position + RECORD_SIZE > segmentSize) {
+                    force(from, position - from);
+                    durable = complete(batch, durable, written);
+                    // Записи прежнего сегмента зафиксированы: при ошибке открытия следующего стирать нечего.
+                    from = position;
+                    openSegment(segmentIndex + 1);
+                    from = 0;
+                }
+                write(entry);
+                written++;
+            }
+            force(from, position - from);
+            complete(batch, durable, written);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to commit {} transfer journal records", batch.size() - durable, e);
+            if (rollBack(from)) {
+                fail(batch, durable, batch.size(), e);
+                return;
+            }
+            failure = e;
+            log.error("Transfer journal stopped accepting records: {} uncommitted records may be replayed "
+                    + "on recovery", written - durable);
+            fail(batch, durable, written, new UncertainCommitException(
+                    "Transfer journal record may be replayed on recovery", e));
+            fail(batch, written, batch.size(), e);
+        }
+    }
+
+    /**
+     * Завершает future записей пачки с {@code from} по {@code to}, уже зафиксированных на диске.
+     *
+     * @return {@code to}
+     */
+    private static int complete(List<Entry> batch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            batch.get(i).durable().complete(null);
+        }
+        return to;
+    }
+
+    private static void fail(List<Entry> batch, int from, int to, Throwable failure) {
+        for (int i = from; i < to; i++) {
+            batch.get(i).durable().completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Стирает записи активного сегмента от {@code from} до текущей позиции, фиксация которых не удалась,
+     * и возвращает позицию записи к {@code from}, чтобы эти записи не были воспроизведены при восстановлении.
+     *
+     * @return {@code true}, если стертый участок зафиксирован на диске; {@code false}, если записи
+     * могли остаться в журнале
+     */
+    private boolean rollBack(int from) {
+        int length = position - from;
+        if (length == 0) {
+            return true;
+        }
+        try {
+            segment.put(from, new byte[length]);
+            position = from;
+            force(from, length);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Failed to erase {} uncommitted transfer journal records", length / RECORD_SIZE, e);
+            return false;
+        }
+    }
+
+    /**
+     * Фиксирует на диске участок активного сегмента.
+     */
+    void force(int from, int length) {
+        segment.force(from, length);
+    }
+
+    private void write(Entry entry) {
+        scratchBuffer.clear();
+        scratchBuffer.putInt(entry.type().code())
+                .putInt(0)
+                .putLong(entry.operationId())
+                .putLong(entry.cardFrom())
+                .putLong(entry.cardTo())
+                .putLong(entry.amount())
+                .putLong(entry.timestamp());
+        scratchBuffer.putInt(4, checksum());
+        segment.put(position, scratch);
+        position += RECORD_SIZE;
+    }
+
+    private int checksum() {
+        crc.reset();
+        crc.update(scratch, PAYLOAD_OFFSET, PAYLOAD_SIZE);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Строит снимок балансов по закрытым сегментам журнала и удаляет сегменты и снимки,
+     * которые им покрыты.
+     * <p>
+     * Выполняется в потоке планировщика параллельно с записью: закрытые сегменты больше
+     * не изменяются, а сегмент, в который пишет писатель, в снимок не включается.
+     */
+    @Scheduled(initialDelayString = "${transfer.snapshot.interval:PT5M}",
+            fixedDelayString = "${transfer.snapshot.interval:PT5M}")
+    public void compact() throws IOException {
+        long activeSegment = segmentIndex;
+        BalanceSnapshot snapshot = BalanceSnapshot.loadLatest(directory);
+        if (snapshot.nextSegment() >= activeSegment) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        int compacted = 0;
+        for (Path path : listSegments()) {
+            long index = segmentIndex(path);
+            if (index >= snapshot.nextSegment() && index < activeSegment) {
+                try (FileChannel sealed = FileChannel.open(path, StandardOpenOption.READ)) {
+                    int size = (int) sealed.size();
+                    readRecords(sealed.map(FileChannel.MapMode.READ_ONLY, 0, size), size, index, snapshot);
+                }
+                compacted++;
+            }
+        }
+        snapshot.nextSegment(activeSegment);
+        Path written = snapshot.write(directory);
+        for (Path path : listSegments()) {
+            if (segmentIndex(path) < activeSegment) {
+                Files.deleteIfExists(path);
+            }
+        }
+        for (Path path : BalanceSnapshot.list(directory)) {
+            if (!path.equals(written)) {
+                Files.deleteIfExists(path);
+            }
+        }
+        log.info("Balance snapshot {} written in {} ms, {} journal segments compacted",
+                written.getFileName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), compacted);
+    }
+
+    private void recover(CardRepository cardRepository) throws IOException {
+        BalanceSnapshot snapshot = BalanceSnapshot.loadLatest(directory);
+        List<Path> segments = listSegments().stream()
+                .filter(path -> segmentIndex(path) >= snapshot.nextSegment())
+                .toList();
+        long records = 0;
+        int replayed = 0;
+        while (replayed < segments.size()) {
+            openSegment(segmentIndex(segments.get(replayed++)));
+            position = readRecords(segment, segmentSize, segmentIndex, snapshot);
+            records += position / RECORD_SIZE;
+            // Писатель переходит к следующему сегменту, только заполнив текущий, поэтому
+            // незаполненный сегмент — конец журнала, а записи после него не воспроизводятся.
+            if (position < segmentSize) {
+                break;
+            }
+        }
+        if (segments.isEmpty()) {
+            openSegment(snapshot.nextSegment());
+        } else {
+            segment.put(position, new byte[segmentSize - position]);
+            segment.force();
+            discard(segments.subList(replayed, segments.size()));
+        }
+        snapshot.applyTo(cardRepository);
+        int interrupted = completeOpenDebits(cardRepository, snapshot.openDebits());
+        log.info("Transfer journal recovered from snapshot at segment {}: {} segments, {} records, "
+                        + "{} interrupted transfers completed",
+                snapshot.nextSegment(), segments.size(), records, interrupted);
+    }
+
+    /**
+     * Исключает из журнала сегменты, следующие за концом воспроизведенных записей.
+     */
+    private static void discard(List<Path> segments) throws IOException {
+        for (Path path : segments) {
+            Path discarded = path.resolveSibling(path.getFileName() + DISCARDED_SUFFIX);
+            log.warn("Transfer journal segment {} follows a torn record and is not replayed, moved to {}",
+                    path.getFileName(), discarded.getFileName());
+            Files.move(path, discarded, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Зачисляет средства по списаниям без парного зачисления и фиксирует записи о зачислении.
+     *
+     * @return количество завершенных переводов
+     */
+    private int completeOpenDebits(CardRepository cardRepository, Collection<BalanceSnapshot.Debit> openDebits) {
+        if (openDebits.isEmpty()) {
+            return 0;
+        }
+        List<Entry> credits = new ArrayList<>(openDebits.size());
+        for (BalanceSnapshot.Debit debit : openDebits) {
+            Card to = cardRepository.getCardByNumber(debit.cardTo());
+            if (to == null) {
+                log.warn("Cannot complete transfer {}: unknown card {}", debit.operationId(), debit.cardTo());
+                continue;
+            }
+            to.refillBalance(debit.amount());
+            credits.add(new Entry(RecordType.CREDIT, debit.operationId(), debit.cardFrom(), debit.cardTo(),
+                    debit.amount(), System.currentTimeMillis(), new CompletableFuture<>()));
+        }
+        commit(credits);
+        for (Entry credit : credits) {
+            credit.durable().join();
+        }
+        return credits.size();
+    }
+
+    /**
+     * Читает записи сегмента с начала до первой пустой или поврежденной записи и учитывает их в снимке.
+     *
+     * @return смещение после последней корректной записи
+     */
+    private static int readRecords(ByteBuffer segment, int limit, long index, BalanceSnapshot snapshot) {
+        byte[] record = new byte[RECORD_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(record);
+        CRC32C recordCrc = new CRC32C();
+        int position = 0;
+        while (position + RECORD_SIZE <= limit) {
+            segment.get(position, record);
+            int code = view.getInt(0);
+            if (code == 0) {
+                break;
+            }
+            RecordType type = RecordType.of(code);
+            recordCrc.reset();
+            recordCrc.update(record, PAYLOAD_OFFSET, PAYLOAD_SIZE);
+            if (type == null || view.getInt(4) != (int) recordCrc.getValue()) {
+                log.warn("Corrupted transfer journal record in segment {} at offset {}", index, position);
+                break;
+            }
+            snapshot.fold(type, view.getLong(8), view.getLong(16), view.getLong(24), view.getLong(32));
+            position += RECORD_SIZE;
+        }
+        return position;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Открывает сегмент для записи. Если сегмент открыть не удалось, запись продолжается в прежний.
+     */
+    private void openSegment(long index) throws IOException {
+        FileChannel opened = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped;
+        try {
+            mapped = opened.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException | RuntimeException e) {
+            opened.close();
+            throw e;
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        channel = opened;
+        segment = mapped;
+        segmentIndex = index;
+        position = 0;
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%019d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentIndex(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private record Entry(RecordType type, long operationId, long cardFrom, long cardTo, long amount, long timestamp,
+                         CompletableFuture<Void> durable) {
+    }
+}
@@ -1,9 +1,14 @@
 package com.karasov.transfer.repository;
 
+import com.karasov.transfer.dto.PendingStatsDto;
 import com.karasov.transfer.models.Request;
 
 public interface TransferRepository {
-    void addRequest(Request request);
+    boolean addRequest(Request request);
 
-    Request getRequest(String id);
+    Request getRequest(long id);
+
+    boolean removeRequest(Request request);
+
+    PendingStatsDto getStats();
 }
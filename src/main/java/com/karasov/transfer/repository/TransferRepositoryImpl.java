@@ -1,43 +1,171 @@
 package com.karasov.transfer.repository;
 
+import com.karasov.transfer.dto.PendingStatsDto;
 import com.karasov.transfer.models.Request;
+import com.karasov.transfer.utils.ConcurrentLongHashMap;
+import com.karasov.transfer.utils.HierarchicalTimingWheel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Реализация интерфейса {@link TransferRepository}, предоставляющая методы для работы с запросами на перевод.
  * <p>
- * Данный класс хранит запросы на перевод в памяти с использованием
- * коллекции {@link ConcurrentHashMap}. Он позволяет добавлять новые запросы и
- * получать существующие по идентификатору.
+ * Данный класс хранит ожидающие подтверждения запросы в памяти с использованием
+ * таблицы {@link ConcurrentLongHashMap} с ключом — числовым идентификатором операции. Каждый запрос хранится не дольше окна подтверждения,
+ * после чего удаляется колесом таймеров {@link HierarchicalTimingWheel}, а удержание суммы
+ * перевода на карте отправителя снимается. Подтвержденные запросы удаляются сразу. Количество одновременно хранимых запросов ограничено:
+ * при достижении предела новые запросы не принимаются.
+ * <p>
+ * Колесо таймеров принадлежит потоку планировщика: новые и удаленные до истечения запросы
+ * попадают к нему через неблокирующие очереди, которые разбираются на каждом тике. Таймер
+ * удаленного запроса отменяется, поэтому колесо хранит только ожидающие запросы.
  */
 @Repository
 public class TransferRepositoryImpl implements TransferRepository {
 
-    private final Map<String, Request> requests = new ConcurrentHashMap<>();
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_LEVELS = 4;
+    private static final int EXPECTED_ENTRIES = 1 << 16;
+
+    private final ConcurrentLongHashMap<Request> requests;
+    private final Queue<Request> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Request> cancelled = new ConcurrentLinkedQueue<>();
+    private final HierarchicalTimingWheel<Request> expirationWheel;
+    private final long confirmationWindowMillis;
+    private final int maxEntries;
+
+    private final AtomicInteger live = new AtomicInteger();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Создает хранилище ожидающих подтверждения запросов.
+     *
+     * @param confirmationWindow время, в течение которого запрос может быть подтвержден
+     * @param maxEntries         максимальное количество одновременно хранимых запросов
+     * @param tickMillis         длительность тика колеса таймеров в миллисекундах
+     */
+    public TransferRepositoryImpl(@Value("${transfer.pending.confirmation-window:5m}") Duration confirmationWindow,
+                                  @Value("${transfer.pending.max-entries:1000000}") int maxEntries,
+                                  @Value("${transfer.pending.tick-millis:100}") long tickMillis) {
+        this.confirmationWindowMillis = confirmationWindow.toMillis();
+        this.maxEntries = maxEntries;
+        this.requests = new ConcurrentLongHashMap<>(Math.min(maxEntries, EXPECTED_ENTRIES));
+        this.expirationWheel = new HierarchicalTimingWheel<>(
+                tickMillis, WHEEL_BITS, WHEEL_LEVELS, System.currentTimeMillis());
+    }
 
     /**
-     * Добавляет новый запрос на перевод в репозиторий.
+     * Добавляет новый запрос на перевод в репозиторий и назначает ему срок подтверждения.
      *
      * @param request запрос на перевод, который будет добавлен
+     * @return {@code true}, если запрос добавлен; {@code false}, если достигнут предел количества запросов
      */
     @Override
-    public void addRequest(Request request) {
+    public boolean addRequest(Request request) {
+        if (live.incrementAndGet() > maxEntries) {
+            live.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        request.setExpiresAt(System.currentTimeMillis() + confirmationWindowMillis);
         requests.put(request.getId(), request);
+        scheduled.offer(request);
+        return true;
     }
 
     /**
      * Получает запрос на перевод по идентификатору.
      *
      * @param id идентификатор запроса для поиска
-     * @return {@link Request} объект, если запрос найден; {@code null}, если запрос с указанным идентификатором не найден
+     * @return {@link Request} объект, если запрос найден и срок его подтверждения не истек;
+     * {@code null} в противном случае
      */
     @Override
-    public Request getRequest(String id) {
-        return requests.get(id);
+    public Request getRequest(long id) {
+        Request request = requests.get(id);
+        if (request == null || request.getExpiresAt() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return request;
+    }
+
+    /**
+     * Удаляет подтвержденный или отмененный запрос из репозитория. Таймер его истечения
+     * отменяется на следующем тике колеса.
+     * <p>
+     * Только один из конкурирующих вызовов для одного запроса вернет {@code true},
+     * что исключает повторное проведение перевода.
+     *
+     * @param request запрос на перевод
+     * @return {@code true}, если запрос был удален этим вызовом; {@code false}, если он уже удален или истек
+     */
+    @Override
+    public boolean removeRequest(Request request) {
+        if (requests.remove(request.getId(), request)) {
+            live.decrementAndGet();
+            removed.increment();
+            cancelled.offer(request);
+            return true;
+        }
+        return false;
     }
-}
 
+    /**
+     * @return количество хранимых, истекших, удаленных до истечения (подтвержденных или отмененных)
+     * и отклоненных запросов
+     */
+    @Override
+    public PendingStatsDto getStats() {
+        return new PendingStatsDto(live.get(), expired.sum(), removed.sum(), rejected.sum());
+    }
+
+    /**
+     * Продвигает колесо таймеров, удаляет запросы, срок подтверждения которых истек,
+     * и снимает их удержания.
+     * <p>
+     * Запрос, удаленный раньше, чем попал в колесо, в колесо не добавляется; таймеры запросов,
+     * удаленных после этого, отменяются.
+     */
+    @Scheduled(fixedDelayString = "${transfer.pending.tick-millis:100}")
+    public void expireRequests() {
+        Request request;
+        while ((request = scheduled.poll()) != null) {
+            if (requests.get(request.getId()) == request) {
+                request.setExpirationTimer(expirationWheel.schedule(request, request.getExpiresAt()));
+            }
+        }
+        while ((request = cancelled.poll()) != null) {
+            HierarchicalTimingWheel.Timer<Request> timer = request.getExpirationTimer();
+            if (timer != null) {
+                expirationWheel.cancel(timer);
+                request.setExpirationTimer(null);
+            }
+        }
+        expirationWheel.advance(System.currentTimeMillis(), this::expire);
+    }
+
+    /**
+     * @return количество запросов в колесе таймеров
+     */
+    int scheduledCount() {
+        return expirationWheel.size();
+    }
+
+    private void expire(Request request) {
+        request.setExpirationTimer(null);
+        if (requests.remove(request.getId(), request)) {
+            live.decrementAndGet();
+            expired.increment();
+            request.releaseHold();
+        }
+    }
+}
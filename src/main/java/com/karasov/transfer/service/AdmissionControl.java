@@ -0,0 +1,181 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.utils.AdaptiveConcurrencyLimit;
+import com.karasov.transfer.utils.CardNumbers;
+import com.karasov.transfer.utils.ConcurrentLongHashMap;
+import com.karasov.transfer.utils.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Допуск запросов к {@link TransferService} с отбрасыванием избыточной нагрузки.
+ * <p>
+ * Каждый запрос сначала получает разрешение общего адаптивного предела одновременных запросов
+ * {@link AdaptiveConcurrencyLimit}, который подстраивается под наблюдаемую задержку. Запрос
+ * на перевод дополнительно забирает токен из корзины {@link TokenBucket} карты отправителя,
+ * поэтому одна карта не может занять всю пропускную способность сервиса. Обе проверки
+ * выполняются без блокировок до валидации и преобразования запроса, и отклоненный запрос
+ * сразу получает ответ 503 или 429, не занимая хранилище ожидающих переводов.
+ * <p>
+ * Полностью пополненные корзины периодически удаляются, поэтому память расходуется только
+ * на недавно активные карты.
+ */
+@Component
+public class AdmissionControl {
+
+    /**
+     * Результат допуска запроса.
+     */
+    public enum Decision {
+        ADMITTED,
+        CARD_RATE_EXCEEDED,
+        OVERLOADED
+    }
+
+    private final boolean enabled;
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final ConcurrentLongHashMap<TokenBucket> cardBuckets = new ConcurrentLongHashMap<>(1 << 16);
+    private final Counter cardRateExceeded;
+    private final Counter overloaded;
+
+    /**
+     * @param enabled       включен ли допуск; если нет, все запросы допускаются
+     * @param cardRate      допустимое количество переводов с одной карты в секунду
+     * @param cardBurst     количество переводов с одной карты, допустимое подряд
+     * @param initialLimit  начальный предел одновременных запросов
+     * @param minLimit      минимальный предел одновременных запросов
+     * @param maxLimit      максимальный предел одновременных запросов
+     * @param latencyTarget целевая задержка запроса, при превышении которой предел снижается
+     * @param registry      реестр метрик
+     */
+    public AdmissionControl(@Value("${transfer.admission.enabled:true}") boolean enabled,
+                            @Value("${transfer.admission.card-rate:10}") double cardRate,
+                            @Value("${transfer.admission.card-burst:20}") int cardBurst,
+                            @Value("${transfer.admission.initial-limit:256}") int initialLimit,
+                            @Value("${transfer.admission.min-limit:16}") int minLimit,
+                            @Value("${transfer.admission.max-limit:4096}") int maxLimit,
+                            @Value("${transfer.admission.latency-target:50ms}") Duration latencyTarget,
+                            MeterRegistry registry) {
+        if (cardRate <= 0 || cardBurst < 1) {
+            throw new IllegalArgumentException("Invalid card rate: " + cardRate + "/s, burst " + cardBurst);
+        }
+        this.enabled = enabled;
+        this.emissionInterval = (long) (1_000_000_000L / cardRate);
+        this.burstTolerance = emissionInterval * cardBurst;
+        this.concurrencyLimit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, latencyTarget.toNanos());
+        this.cardRateExceeded = Counter.builder("transfer.admission.rejected")
+                .description("Requests shed before processing")
+                .tag("reason", "card_rate")
+                .register(registry);
+        this.overloaded = Counter.builder("transfer.admission.rejected")
+                .description("Requests shed before processing")
+                .tag("reason", "overload")
+                .register(registry);
+        Gauge.builder("transfer.admission.limit", concurrencyLimit, AdaptiveConcurrencyLimit::limit)
+                .description("Current adaptive limit of concurrent requests")
+                .register(registry);
+        Gauge.builder("transfer.admission.in-flight", concurrencyLimit, AdaptiveConcurrencyLimit::inFlight)
+                .description("Requests currently admitted")
+                .register(registry);
+        Gauge.builder("transfer.admission.card-buckets", cardBuckets, ConcurrentLongHashMap::size)
+                .description("Cards with a partially drained token bucket")
+                .register(registry);
+    }
+
+    /**
+     * Получает разрешение общего предела одновременных запросов.
+     *
+     * @return {@link Decision#ADMITTED}, если разрешение получено и должно быть возвращено
+     * через {@link #complete(long)} или {@link #cancel()}; иначе {@link Decision#OVERLOADED}
+     */
+    public Decision admit() {
+        if (!enabled || concurrencyLimit.tryAcquire()) {
+            return Decision.ADMITTED;
+        }
+        overloaded.increment();
+        return Decision.OVERLOADED;
+    }
+
+    /**
+     * Получает разрешение общего предела и токен карты отправителя. Если токена нет,
+     * разрешение общего предела возвращается.
+     *
+     * @param cardFromNumber номер карты отправителя; некорректный номер не ограничивается,
+     *                       такой запрос будет отклонен валидацией
+     * @return результат допуска; разрешение нужно вернуть, только если запрос допущен
+     */
+    public Decision admit(String cardFromNumber) {
+        Decision decision = admit();
+        if (decision == Decision.ADMITTED && !admitCard(cardFromNumber)) {
+            cancel();
+            return Decision.CARD_RATE_EXCEEDED;
+        }
+        return decision;
+    }
+
+    /**
+     * Забирает токен из корзины карты отправителя, не затрагивая общий предел.
+     * Используется для элементов пакетного запроса.
+     *
+     * @param cardFromNumber номер карты отправителя
+     * @return {@code true}, если перевод с карты допущен
+     */
+    public boolean admitCard(String cardFromNumber) {
+        long cardNumber = CardNumbers.parse(cardFromNumber);
+        if (!enabled || cardNumber == CardNumbers.INVALID) {
+            return true;
+        }
+        long now = System.nanoTime();
+        TokenBucket bucket = cardBuckets.get(cardNumber);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(now);
+            bucket = cardBuckets.putIfAbsent(cardNumber, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        if (bucket.tryAcquire(now, emissionInterval, burstTolerance)) {
+            return true;
+        }
+        cardRateExceeded.increment();
+        return false;
+    }
+
+    /**
+     * Возвращает разрешение обработанного запроса и учитывает его задержку в адаптивном пределе.
+     *
+     * @param admittedAt момент допуска по {@link System#nanoTime()}
+     */
+    public void complete(long admittedAt) {
+        if (enabled) {
+            concurrencyLimit.release(admittedAt);
+        }
+    }
+
+    /**
+     * Возвращает разрешение без учета задержки. Используется для пакетных запросов,
+     * длительность которых зависит от размера пакета.
+     */
+    public void cancel() {
+        if (enabled) {
+            concurrencyLimit.cancel();
+        }
+    }
+
+    /**
+     * Удаляет корзины карт, пополнившиеся полностью.
+     */
+    @Scheduled(fixedDelayString = "${transfer.admission.eviction-interval:PT1M}")
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        cardBuckets.removeIf(bucket -> bucket.isFull(now));
+    }
+}
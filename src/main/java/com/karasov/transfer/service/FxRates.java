@@ -0,0 +1,78 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.utils.FxRateTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Текущие курсы валют для {@link TransferService}.
+ * <p>
+ * Курсы читаются из локального файла {@code transfer.fx.feed-file} (строки вида {@code USD=92.4512})
+ * и хранятся в неизменяемой {@link FxRateTable}. Файл проверяется периодически; если он изменился,
+ * новая таблица строится в потоке планировщика и публикуется одной записью в volatile-поле.
+ * Перевод читает таблицу без блокировок. Если файл не задан, известен только рубль.
+ */
+@Slf4j
+@Component
+public class FxRates {
+
+    private final Path feedFile;
+    private volatile FxRateTable table = FxRateTable.ROUBLES_ONLY;
+    private long loadedModifiedAt;
+
+    /**
+     * Загружает курсы из файла, если он задан.
+     *
+     * @param feedFile файл курсов; пустое значение — только рубль
+     * @throws UncheckedIOException     если файл не удалось прочитать
+     * @throws IllegalArgumentException если файл содержит некорректные курсы
+     */
+    public FxRates(@Value("${transfer.fx.feed-file:}") String feedFile) {
+        this.feedFile = feedFile.isBlank() ? null : Path.of(feedFile);
+        if (this.feedFile != null) {
+            try {
+                load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load FX rates " + feedFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return текущая таблица курсов
+     */
+    public FxRateTable table() {
+        return table;
+    }
+
+    /**
+     * Перечитывает файл курсов, если он изменился. При ошибке сохраняются прежние курсы.
+     */
+    @Scheduled(fixedDelayString = "${transfer.fx.refresh-interval:PT1M}")
+    public void refresh() {
+        if (feedFile == null) {
+            return;
+        }
+        try {
+            if (Files.getLastModifiedTime(feedFile).toMillis() != loadedModifiedAt) {
+                load();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Failed to refresh FX rates from {}, keeping previous rates: {}", feedFile, e.getMessage());
+        }
+    }
+
+    private void load() throws IOException {
+        long modifiedAt = Files.getLastModifiedTime(feedFile).toMillis();
+        table = FxRateTable.parse(Files.readAllLines(feedFile));
+        loadedModifiedAt = modifiedAt;
+        log.info("FX rates loaded from {}", feedFile);
+    }
+}
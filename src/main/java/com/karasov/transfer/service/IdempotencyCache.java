@@ -0,0 +1,93 @@
+package com.karasov.transfer.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.karasov.transfer.dto.RegisterStatusDto;
+import com.karasov.transfer.dto.RequestDto;
+import com.karasov.transfer.dto.TransferStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Кэш результатов регистрации переводов по ключу идемпотентности ({@code Idempotency-Key}).
+ * <p>
+ * Повторный запрос с тем же ключом получает сохраненный результат без повторной валидации
+ * и регистрации перевода. Одновременные запросы с одним ключом объединяются: перевод
+ * регистрирует только один из них, остальные дожидаются его результата. Кэш хранит future результата:
+ * под блокировкой Caffeine в него только помещается незавершенный future, а перевод регистрируется
+ * вне блокировки, поэтому регистрация не задерживает обращения к другим ключам того же сегмента таблицы.
+ * <p>
+ * Кэш ограничен по размеру (вытеснение по политике W-TinyLFU библиотеки Caffeine) и по времени
+ * хранения записи. Результаты {@link TransferStatus#PENDING_LIMIT_EXCEEDED},
+ * {@link TransferStatus#SMS_OUTBOX_FULL}, {@link TransferStatus#NOT_ENOUGH_MONEY} и
+ * {@link TransferStatus#FX_RATE_UNAVAILABLE} не сохраняются: повтор такого запроса после
+ * освобождения места, пополнения карты или загрузки курса должен быть зарегистрирован.
+ */
+@Component
+public class IdempotencyCache {
+
+    private final AsyncCache<String, Entry> cache;
+
+    /**
+     * Создает кэш и регистрирует его метрики {@code cache.*} с тегом {@code cache=transfer.idempotency}.
+     *
+     * @param maxSize  максимальное количество хранимых ключей
+     * @param ttl      время хранения результата
+     * @param registry реестр метрик
+     */
+    public IdempotencyCache(@Value("${transfer.idempotency.max-size:100000}") long maxSize,
+                            @Value("${transfer.idempotency.ttl:10m}") Duration ttl,
+                            MeterRegistry registry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "transfer.idempotency");
+    }
+
+    /**
+     * Возвращает сохраненный результат регистрации по ключу или регистрирует перевод.
+     *
+     * @param key        ключ идемпотентности
+     * @param requestDto данные перевода
+     * @param transfer   регистрация перевода, вызывается не более одного раза на ключ
+     *                   в потоке запроса, поместившего ключ в кэш
+     * @return запись с данными перевода, для которых был получен результат, и самим результатом
+     */
+    public Entry get(String key, RequestDto requestDto, Function<RequestDto, RegisterStatusDto> transfer) {
+        CompletableFuture<Entry> registration = new CompletableFuture<>();
+        CompletableFuture<Entry> cached = cache.get(key, (k, executor) -> registration);
+        if (cached == registration) {
+            try {
+                registration.complete(new Entry(requestDto, transfer.apply(requestDto)));
+            } catch (RuntimeException e) {
+                // Завершенный ошибкой future удаляется из кэша, и повтор запроса регистрирует перевод заново.
+                registration.completeExceptionally(e);
+                throw e;
+            }
+        }
+        Entry entry = cached.join();
+        TransferStatus status = entry.status().status();
+        if (status == TransferStatus.PENDING_LIMIT_EXCEEDED || status == TransferStatus.SMS_OUTBOX_FULL
+                || status == TransferStatus.NOT_ENOUGH_MONEY || status == TransferStatus.FX_RATE_UNAVAILABLE) {
+            cache.asMap().remove(key, cached);
+        }
+        return entry;
+    }
+
+    /**
+     * Сохраненный результат регистрации перевода.
+     *
+     * @param request данные перевода, с которыми был получен результат
+     * @param status  результат регистрации
+     */
+    public record Entry(RequestDto request, RegisterStatusDto status) {
+    }
+}
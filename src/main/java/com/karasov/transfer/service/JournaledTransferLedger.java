@@ -0,0 +1,98 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.metrics.TransferMetrics.Stage;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.TransferJournal;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Реализация {@link TransferLedger}, изменяющая балансы атомарными операциями в пуле потоков проведения
+ * после фиксации перевода в журнале.
+ * <p>
+ * Перевод удержанной суммы ставит запись в {@link TransferJournal} и после ее фиксации
+ * изменяет балансы карт атомарными операциями. Наличие средств обеспечено удержанием
+ * при регистрации, поэтому карты не блокируются: прежний режим {@code locking} с полосатыми
+ * блокировками карт заменен этим режимом. Журнал сообщает о фиксации из своего потока,
+ * а балансы изменяются в пуле из {@code transfer.ledger.capture-threads} потоков, чтобы поток журнала
+ * занимался только записью. Используется по умолчанию ({@code transfer.ledger.mode=journaled}).
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.ledger.mode", havingValue = "journaled", matchIfMissing = true)
+public class JournaledTransferLedger implements TransferLedger {
+
+    private final TransferJournal transferJournal;
+    private final TransferMetrics metrics;
+    private final Executor captureExecutor;
+
+    /**
+     * @param transferJournal журнал переводов
+     * @param metrics         метрики обработки переводов
+     * @param captureThreads  количество потоков, изменяющих балансы; 0 — по количеству процессоров
+     */
+    @Autowired
+    public JournaledTransferLedger(TransferJournal transferJournal,
+                                 TransferMetrics metrics,
+                                 @Value("${transfer.ledger.capture-threads:0}") int captureThreads) {
+        this(transferJournal, metrics, captureExecutor(captureThreads));
+    }
+
+    /**
+     * @param captureExecutor исполнитель, в котором изменяются балансы после фиксации записи
+     */
+    JournaledTransferLedger(TransferJournal transferJournal,
+                          TransferMetrics metrics,
+                          Executor captureExecutor) {
+        this.transferJournal = transferJournal;
+        this.metrics = metrics;
+        this.captureExecutor = captureExecutor;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> capture(long operationId,
+                                              Card cardFrom, long cardFromNumber,
+                                              Card cardTo, long cardToNumber,
+                                              long amount) {
+        return transferJournal.append(operationId, cardFromNumber, cardToNumber, amount)
+                .thenApplyAsync(ignored -> {
+                    long stageStart = metrics.start();
+                    cardTo.refillBalance(amount);
+                    cardFrom.captureHold(amount);
+                    metrics.lap(Stage.BALANCE_UPDATE, stageStart);
+                    return true;
+                }, captureExecutor);
+    }
+
+    /**
+     * Останавливает пул после изменения балансов по уже зафиксированным переводам.
+     */
+    @PreDestroy
+    public void close() {
+        if (captureExecutor instanceof ExecutorService service) {
+            service.shutdown();
+        }
+    }
+
+    private static ExecutorService captureExecutor(int captureThreads) {
+        if (captureThreads < 0) {
+            throw new IllegalArgumentException("Capture thread count must not be negative: " + captureThreads);
+        }
+        int count = captureThreads == 0 ? Runtime.getRuntime().availableProcessors() : captureThreads;
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newFixedThreadPool(count, task -> {
+            Thread thread = new Thread(task, "transfer-ledger-capture-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
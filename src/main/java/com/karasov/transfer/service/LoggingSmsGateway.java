@@ -0,0 +1,25 @@
+package com.karasov.transfer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Локальная заглушка {@link SmsGateway}, записывающая коды в лог вместо отправки
+ * ({@code transfer.sms.gateway=log}). Предназначена для разработки и демонстрации.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.sms.gateway", havingValue = "log", matchIfMissing = true)
+public class LoggingSmsGateway implements SmsGateway {
+
+    @Override
+    public void send(List<Message> messages) {
+        for (Message message : messages) {
+            log.info("SMS for card {}: verification code {} for operationId {}",
+                    message.cardNumber(), message.code(), message.operationId());
+        }
+    }
+}
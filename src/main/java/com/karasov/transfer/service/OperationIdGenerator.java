@@ -0,0 +1,90 @@
+package com.karasov.transfer.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор 64-битных идентификаторов операций в стиле Snowflake.
+ * <p>
+ * Идентификатор состоит из 41 бита времени в миллисекундах от {@link #EPOCH},
+ * 10 бит номера узла ({@code transfer.node-id}) и 12 бит порядкового номера в пределах
+ * миллисекунды. Идентификаторы разных узлов не пересекаются, а за счет времени в старших битах
+ * не повторяются после перезапуска и монотонно возрастают.
+ * <p>
+ * Генератор не блокируется: время и порядковый номер хранятся в одном {@link AtomicLong}
+ * и обновляются через CAS. Если порядковые номера текущей миллисекунды исчерпаны или системные
+ * часы отстали, генератор продолжает выдавать номера в счет следующих миллисекунд, не дожидаясь их.
+ */
+@Component
+public class OperationIdGenerator {
+
+    /**
+     * Начало отсчета времени: 2024-01-01T00:00:00Z.
+     */
+    static final long EPOCH = 1704067200000L;
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    /**
+     * Значение, возвращаемое {@link #parse(CharSequence)} для некорректного идентификатора.
+     */
+    public static final long INVALID = -1L;
+
+    private final long nodeBits;
+    private final AtomicLong lastState = new AtomicLong();
+
+    /**
+     * Создает генератор.
+     *
+     * @param nodeId номер узла от 0 до 1023, уникальный для каждого экземпляра сервиса
+     */
+    public OperationIdGenerator(@Value("${transfer.node-id:0}") long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    /**
+     * @return новый уникальный положительный идентификатор операции
+     */
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long previous;
+        long next;
+        do {
+            previous = lastState.get();
+            next = Math.max(now, previous + 1);
+        } while (!lastState.compareAndSet(previous, next));
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+    }
+
+    /**
+     * Разбирает строковое представление идентификатора без создания исключений.
+     *
+     * @param id строка с десятичным идентификатором
+     * @return идентификатор или {@link #INVALID}, если строка не является положительным числом {@code long}
+     */
+    public static long parse(CharSequence id) {
+        if (id == null || id.isEmpty() || id.length() > 19) {
+            return INVALID;
+        }
+        long result = 0;
+        for (int i = 0; i < id.length(); i++) {
+            int digit = id.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            result = result * 10 + digit;
+            if (result < 0) {
+                return INVALID;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,228 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.metrics.TransferMetrics.Stage;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.TransferJournal;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Реализация {@link TransferLedger} с одним потоком-писателем балансов
+ * ({@code transfer.ledger.mode=sequenced}).
+ * <p>
+ * Переводы публикуются в заранее выделенный кольцевой буфер: поток запроса получает номер
+ * в последовательности атомарным инкрементом, заполняет ячейку и публикует ее номер.
+ * Писатель обходит ячейки по порядку номеров и ставит записи в {@link TransferJournal}.
+ * Поток журнала после фиксации только отмечает ячейку, а балансы изменяет сам писатель,
+ * проходя зафиксированные ячейки по порядку номеров: блокировки карт не нужны, а строки кэша
+ * с балансами не перемещаются между ядрами. Ячейка освобождается после изменения балансов.
+ * Вызывающий ожидает результат через {@link CompletableFuture}, завершаемый после фиксации
+ * записи в журнале и изменения балансов.
+ * <p>
+ * При заполнении буфера поток запроса ожидает освобождения ячейки. Писатель без работы
+ * сначала активно ожидает, затем засыпает до публикации следующего перевода.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.ledger.mode", havingValue = "sequenced")
+public class SequencedTransferLedger implements TransferLedger {
+
+    private static final int SPIN_TRIES = 1_000;
+    private static final int PENDING = 0;
+    private static final int JOURNALED = 1;
+    private static final int FAILED = 2;
+
+    private final TransferJournal transferJournal;
+    private final TransferMetrics metrics;
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong consumed = new AtomicLong(-1);
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile boolean running = true;
+
+    /**
+     * Создает кольцевой буфер и запускает поток-писатель.
+     *
+     * @param transferJournal журнал переводов
+     * @param metrics         метрики обработки переводов
+     * @param ringSize        количество ячеек буфера, округляется вверх до степени двойки
+     */
+    public SequencedTransferLedger(TransferJournal transferJournal,
+                                   TransferMetrics metrics,
+                                   @Value("${transfer.ledger.ring-size:65536}") int ringSize) {
+        if (ringSize <= 0) {
+            throw new IllegalArgumentException("Ring size must be positive: " + ringSize);
+        }
+        this.transferJournal = transferJournal;
+        this.metrics = metrics;
+        int size = Math.max(Integer.highestOneBit(ringSize - 1) << 1, 1);
+        ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        mask = size - 1;
+        writer = new Thread(this::writeLoop, "transfer-ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> capture(long operationId,
+                                              Card cardFrom, long cardFromNumber,
+                                              Card cardTo, long cardToNumber,
+                                              long amount) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new IllegalStateException("Transfer ledger is closed"));
+            return result;
+        }
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - ring.length;
+        while (consumed.get() < wrapPoint) {
+            Thread.onSpinWait();
+        }
+        Slot slot = ring[(int) sequence & mask];
+        slot.operationId = operationId;
+        slot.cardFrom = cardFrom;
+        slot.cardFromNumber = cardFromNumber;
+        slot.cardTo = cardTo;
+        slot.cardToNumber = cardToNumber;
+        slot.amount = amount;
+        slot.result = result;
+        slot.state = PENDING;
+        slot.published = sequence;
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        return result;
+    }
+
+    /**
+     * Останавливает поток-писатель после обработки уже опубликованных переводов.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+    }
+
+    private void writeLoop() {
+        long next = 0;
+        long applied = 0;
+        int idle = 0;
+        while (running || next <= claimed.get() || applied < next) {
+            boolean progressed = false;
+            Slot slot = ring[(int) next & mask];
+            if (slot.published == next) {
+                append(slot);
+                next++;
+                progressed = true;
+            }
+            while (applied < next) {
+                Slot journaled = ring[(int) applied & mask];
+                if (journaled.state == PENDING) {
+                    break;
+                }
+                apply(journaled);
+                consumed.lazySet(applied);
+                applied++;
+                progressed = true;
+            }
+            if (progressed) {
+                idle = 0;
+            } else {
+                idle = idle(next, applied, idle);
+            }
+        }
+    }
+
+    private int idle(long next, long applied, int idle) {
+        if (idle < SPIN_TRIES) {
+            Thread.onSpinWait();
+            return idle + 1;
+        }
+        writerParked = true;
+        if (ring[(int) next & mask].published != next
+                && (applied == next || ring[(int) applied & mask].state == PENDING)) {
+            if (running) {
+                LockSupport.park(this);
+            } else {
+                Thread.yield();
+            }
+        }
+        writerParked = false;
+        return idle;
+    }
+
+    /**
+     * Ставит перевод в журнал. Журнал сообщает о фиксации из своего потока, который только отмечает
+     * ячейку и будит писателя: балансы изменяет писатель в {@link #apply(Slot)}.
+     */
+    private void append(Slot slot) {
+        try {
+            transferJournal.append(slot.operationId, slot.cardFromNumber, slot.cardToNumber, slot.amount)
+                    .whenComplete((ignored, failure) -> {
+                        slot.failure = failure;
+                        slot.state = failure == null ? JOURNALED : FAILED;
+                        if (writerParked) {
+                            LockSupport.unpark(writer);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            slot.failure = e;
+            slot.state = FAILED;
+        }
+    }
+
+    /**
+     * Изменяет балансы по зафиксированному переводу и завершает его future. Ячейки обрабатываются
+     * в порядке номеров, поэтому балансы изменяются в порядке публикации переводов.
+     */
+    private void apply(Slot slot) {
+        CompletableFuture<Boolean> result = slot.result;
+        try {
+            if (slot.state == FAILED) {
+                result.completeExceptionally(slot.failure);
+                return;
+            }
+            long stageStart = metrics.start();
+            slot.cardTo.refillBalance(slot.amount);
+            slot.cardFrom.captureHold(slot.amount);
+            metrics.lap(Stage.BALANCE_UPDATE, stageStart);
+            result.complete(true);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        } finally {
+            slot.cardFrom = null;
+            slot.cardTo = null;
+            slot.result = null;
+            slot.failure = null;
+        }
+    }
+
+    /**
+     * Ячейка кольцевого буфера. Поля записываются потоком запроса до публикации номера
+     * в {@link #published} и читаются писателем после того, как он увидит этот номер.
+     */
+    private static final class Slot {
+        private long operationId;
+        private Card cardFrom;
+        private long cardFromNumber;
+        private Card cardTo;
+        private long cardToNumber;
+        private long amount;
+        private CompletableFuture<Boolean> result;
+        private Throwable failure;
+        private volatile int state;
+        private volatile long published = -1;
+    }
+}
@@ -0,0 +1,294 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.metrics.TransferMetrics.Stage;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.TransferJournal;
+import com.karasov.transfer.repository.TransferJournal.RecordType;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Реализация {@link TransferLedger}, разделяющая карты между шардами
+ * ({@code transfer.ledger.mode=sharded}).
+ * <p>
+ * Карта принадлежит одному из {@code transfer.ledger.shards} шардов по хэшу номера, и переводы
+ * по ней записывает в журнал только поток этого шарда. Перевод между картами одного шарда
+ * записывается этим потоком одной записью {@link RecordType#TRANSFER}; после ее фиксации
+ * балансы обеих карт изменяются.
+ * <p>
+ * Перевод между шардами выполняется в два шага: шард отправителя пишет в журнал
+ * {@link RecordType#DEBIT} и после фиксации списывает удержание и передает зачисление шарду
+ * получателя, который пишет {@link RecordType#CREDIT} и зачисляет средства. Журнал фиксирует
+ * записи в порядке добавления, поэтому зачисление не может оказаться в журнале без списания.
+ * Зафиксированное списание означает проведенный перевод: если процесс остановился между шагами
+ * или запись о зачислении не удалось зафиксировать, зачисление будет выполнено при восстановлении
+ * журнала. Поэтому ошибкой завершается только перевод, списание по которому не зафиксировано,
+ * и балансы по нему не изменяются.
+ * <p>
+ * Журнал сообщает о фиксации записи из своего потока. Этот поток только возвращает перевод
+ * в очередь шарда-владельца, а удержание списывает и средства зачисляет поток шарда, поэтому
+ * проведенные переводы изменяют балансы карт шарда только в его потоке.
+ * <p>
+ * Наличие средств обеспечено удержанием при регистрации, поэтому шард отправителя
+ * не проверяет баланс, а только списывает удержание.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.ledger.mode", havingValue = "sharded")
+public class ShardedTransferLedger implements TransferLedger {
+
+    private static final int SPIN_TRIES = 1_000;
+
+    private final TransferJournal transferJournal;
+    private final TransferMetrics metrics;
+    private final Shard[] shards;
+    private final LongAdder inFlight = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Создает шарды и запускает их потоки.
+     *
+     * @param transferJournal журнал переводов
+     * @param metrics         метрики обработки переводов
+     * @param shardCount      количество шардов; 0 — по количеству процессоров
+     */
+    public ShardedTransferLedger(TransferJournal transferJournal,
+                                 TransferMetrics metrics,
+                                 @Value("${transfer.ledger.shards:0}") int shardCount) {
+        if (shardCount < 0) {
+            throw new IllegalArgumentException("Shard count must not be negative: " + shardCount);
+        }
+        this.transferJournal = transferJournal;
+        this.metrics = metrics;
+        int count = shardCount == 0 ? Runtime.getRuntime().availableProcessors() : shardCount;
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> capture(long operationId,
+                                              Card cardFrom, long cardFromNumber,
+                                              Card cardTo, long cardToNumber,
+                                              long amount) {
+        Command command = new Command(operationId, cardFrom, cardFromNumber, cardTo, cardToNumber, amount,
+                shardOf(cardToNumber));
+        inFlight.increment();
+        if (!running) {
+            inFlight.decrement();
+            command.result.completeExceptionally(new IllegalStateException("Transfer ledger is closed"));
+            return command.result;
+        }
+        shards[shardOf(cardFromNumber)].offer(command);
+        return command.result;
+    }
+
+    /**
+     * Останавливает потоки шардов после завершения уже принятых переводов,
+     * в том числе зачислений, переданных между шардами.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            shard.thread.join();
+        }
+    }
+
+    /**
+     * @param cardNumber номер карты
+     * @return номер шарда, которому принадлежит карта
+     */
+    int shardOf(long cardNumber) {
+        long hash = (cardNumber * 0x9E3779B97F4A7C15L) >>> 32;
+        return (int) ((hash * shards.length) >>> 32);
+    }
+
+    /**
+     * Выполняет очередной шаг перевода в потоке шарда, которому принадлежат изменяемые карты.
+     */
+    private void step(Shard shard, Command command) {
+        switch (command.phase) {
+            case NEW -> append(shard, command);
+            case JOURNALED -> {
+                command.cardTo.refillBalance(command.amount);
+                command.cardFrom.captureHold(command.amount);
+                complete(command);
+            }
+            case DEBITED -> {
+                command.cardFrom.captureHold(command.amount);
+                command.phase = Phase.CREDIT;
+                shards[command.targetShard].offer(command);
+            }
+            case CREDIT -> {
+                CompletableFuture<Void> durable = transferJournal.append(RecordType.CREDIT, command.operationId,
+                        command.cardFromNumber, command.cardToNumber, command.amount);
+                durable.whenComplete((ignored, failure) -> {
+                    if (failure != null) {
+                        log.error("Credit of transfer {} is not journaled and will be completed from its debit "
+                                + "on recovery", command.operationId, failure);
+                    }
+                    handBack(shard, command, Phase.CREDITED);
+                });
+            }
+            case CREDITED -> {
+                command.cardTo.refillBalance(command.amount);
+                complete(command);
+            }
+        }
+    }
+
+    private void append(Shard shard, Command command) {
+        boolean local = command.targetShard == shard.index;
+        transferJournal.append(local ? RecordType.TRANSFER : RecordType.DEBIT, command.operationId,
+                        command.cardFromNumber, command.cardToNumber, command.amount)
+                .whenComplete((ignored, failure) -> {
+                    if (failure != null) {
+                        inFlight.decrement();
+                        command.result.completeExceptionally(failure);
+                        return;
+                    }
+                    handBack(shard, command, local ? Phase.JOURNALED : Phase.DEBITED);
+                });
+    }
+
+    /**
+     * Возвращает перевод из потока журнала шарду-владельцу карт: балансы изменяет только поток шарда.
+     */
+    private static void handBack(Shard shard, Command command, Phase phase) {
+        command.phase = phase;
+        shard.offer(command);
+    }
+
+    private void complete(Command command) {
+        inFlight.decrement();
+        command.result.complete(true);
+    }
+
+    /**
+     * Шард: очередь команд и поток, единолично проводящий переводы по картам шарда.
+     */
+    private final class Shard {
+        private final int index;
+        private final Queue<Command> inbox = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean parked;
+
+        private Shard(int index) {
+            this.index = index;
+            this.thread = new Thread(this::run, "transfer-ledger-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void offer(Command command) {
+            inbox.offer(command);
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void run() {
+            int idle = 0;
+            while (running || inFlight.sum() > 0) {
+                Command command = inbox.poll();
+                if (command == null) {
+                    idle = idle(idle);
+                    continue;
+                }
+                idle = 0;
+                long stageStart = metrics.start();
+                try {
+                    step(this, command);
+                } catch (RuntimeException e) {
+                    inFlight.decrement();
+                    command.result.completeExceptionally(e);
+                }
+                metrics.lap(Stage.BALANCE_UPDATE, stageStart);
+            }
+        }
+
+        private int idle(int idle) {
+            if (idle < SPIN_TRIES) {
+                Thread.onSpinWait();
+                return idle + 1;
+            }
+            parked = true;
+            if (inbox.isEmpty() && running) {
+                LockSupport.park(this);
+            } else if (!running) {
+                Thread.yield();
+            }
+            parked = false;
+            return idle;
+        }
+    }
+
+    /**
+     * Шаг перевода, который выполнит шард, получивший команду.
+     */
+    private enum Phase {
+        /**
+         * Шард отправителя ставит в журнал {@link RecordType#TRANSFER} или {@link RecordType#DEBIT}.
+         */
+        NEW,
+        /**
+         * Запись {@link RecordType#TRANSFER} зафиксирована: шард изменяет балансы обеих карт.
+         */
+        JOURNALED,
+        /**
+         * Списание зафиксировано: шард отправителя списывает удержание и передает зачисление шарду получателя.
+         */
+        DEBITED,
+        /**
+         * Шард получателя ставит в журнал {@link RecordType#CREDIT}.
+         */
+        CREDIT,
+        /**
+         * Зачисление зафиксировано или будет выполнено при восстановлении: шард получателя зачисляет средства.
+         */
+        CREDITED
+    }
+
+    /**
+     * Перевод, передаваемый от шарда отправителя шарду получателя.
+     */
+    private static final class Command {
+        private final long operationId;
+        private final Card cardFrom;
+        private final long cardFromNumber;
+        private final Card cardTo;
+        private final long cardToNumber;
+        private final long amount;
+        private final int targetShard;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private Phase phase = Phase.NEW;
+
+        private Command(long operationId, Card cardFrom, long cardFromNumber, Card cardTo, long cardToNumber,
+                        long amount, int targetShard) {
+            this.operationId = operationId;
+            this.cardFrom = cardFrom;
+            this.cardFromNumber = cardFromNumber;
+            this.cardTo = cardTo;
+            this.cardToNumber = cardToNumber;
+            this.amount = amount;
+            this.targetShard = targetShard;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.karasov.transfer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронная отправка верификационных кодов через {@link SmsGateway}.
+ * <p>
+ * Поток запроса только помещает сообщение в ограниченную очередь исходящих сообщений (outbox)
+ * и никогда не ждет шлюз: если очередь заполнена, сообщение не принимается, и регистрация
+ * перевода отклоняется. Отдельный поток {@code sms-dispatcher} забирает сообщения пакетами
+ * до {@code batch-size} штук и передает их шлюзу. Непринятый шлюзом пакет отправляется повторно
+ * с экспоненциально растущей задержкой со случайным разбросом, но не более {@code max-attempts} раз.
+ * Пока шлюз недоступен, новые сообщения накапливаются в очереди.
+ * <p>
+ * Метрики: размер очереди {@code transfer.sms.outbox.size}, задержка от постановки в очередь
+ * до приема шлюзом {@code transfer.sms.dispatch.latency}, длительность обращения к шлюзу
+ * {@code transfer.sms.gateway.latency} и счетчики {@code transfer.sms.messages} по результату.
+ */
+@Slf4j
+@Component
+public class SmsDispatcher {
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final SmsGateway gateway;
+    private final BlockingQueue<Outgoing> outbox;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoff;
+    private final long maxRetryBackoff;
+    private final Timer dispatchLatency;
+    private final Timer gatewayLatency;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter rejected;
+    private final Counter retried;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * Создает очередь и запускает поток отправки.
+     *
+     * @param gateway         шлюз отправки SMS
+     * @param outboxCapacity  максимальное количество неотправленных сообщений
+     * @param batchSize       максимальное количество сообщений в пакете
+     * @param maxAttempts     максимальное количество попыток отправки пакета
+     * @param retryBackoff    задержка перед первой повторной попыткой
+     * @param maxRetryBackoff максимальная задержка между попытками
+     * @param registry        реестр метрик
+     */
+    public SmsDispatcher(SmsGateway gateway,
+                         @Value("${transfer.sms.outbox-capacity:100000}") int outboxCapacity,
+                         @Value("${transfer.sms.batch-size:100}") int batchSize,
+                         @Value("${transfer.sms.max-attempts:5}") int maxAttempts,
+                         @Value("${transfer.sms.retry-backoff:100ms}") Duration retryBackoff,
+                         @Value("${transfer.sms.max-retry-backoff:10s}") Duration maxRetryBackoff,
+                         MeterRegistry registry) {
+        if (batchSize < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid SMS dispatch settings: batch size " + batchSize
+                    + ", attempts " + maxAttempts);
+        }
+        this.gateway = gateway;
+        this.outbox = new ArrayBlockingQueue<>(outboxCapacity);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = Math.max(retryBackoff.toNanos(), 1);
+        this.maxRetryBackoff = Math.max(maxRetryBackoff.toNanos(), this.retryBackoff);
+        Gauge.builder("transfer.sms.outbox.size", outbox, BlockingQueue::size)
+                .description("Verification codes waiting to be sent")
+                .register(registry);
+        this.dispatchLatency = Timer.builder("transfer.sms.dispatch.latency")
+                .description("Time from queuing a verification code to its acceptance by the gateway")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.gatewayLatency = Timer.builder("transfer.sms.gateway.latency")
+                .description("Duration of a gateway call for one batch")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.sent = messages(registry, "sent");
+        this.failed = messages(registry, "failed");
+        this.rejected = messages(registry, "rejected");
+        this.retried = Counter.builder("transfer.sms.retries")
+                .description("Repeated gateway calls after a failure")
+                .register(registry);
+        dispatcher = new Thread(this::dispatchLoop, "sms-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private static Counter messages(MeterRegistry registry, String outcome) {
+        return Counter.builder("transfer.sms.messages")
+                .description("Verification code messages by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Ставит верификационный код в очередь на отправку, не блокируя вызывающий поток.
+     *
+     * @param operationId идентификатор операции
+     * @param cardNumber  номер карты отправителя
+     * @param code        верификационный код
+     * @return {@code true}, если сообщение принято; {@code false}, если очередь заполнена
+     */
+    public boolean enqueue(long operationId, String cardNumber, String code) {
+        if (running && outbox.offer(new Outgoing(
+                new SmsGateway.Message(operationId, cardNumber, code), System.nanoTime()))) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Останавливает поток отправки. Сообщения, уже стоящие в очереди, отправляются
+     * одной попыткой без повторов.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        dispatcher.interrupt();
+        dispatcher.join();
+    }
+
+    private void dispatchLoop() {
+        List<Outgoing> batch = new ArrayList<>(batchSize);
+        List<SmsGateway.Message> messages = new ArrayList<>(batchSize);
+        while (running || !outbox.isEmpty()) {
+            Outgoing first;
+            try {
+                first = outbox.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            outbox.drainTo(batch, batchSize - 1);
+            for (Outgoing outgoing : batch) {
+                messages.add(outgoing.message());
+            }
+            dispatch(batch, messages);
+            batch.clear();
+            messages.clear();
+        }
+    }
+
+    private void dispatch(List<Outgoing> batch, List<SmsGateway.Message> messages) {
+        long backoff = retryBackoff;
+        for (int attempt = 1; ; attempt++) {
+            long startedAt = System.nanoTime();
+            try {
+                gateway.send(messages);
+                long now = System.nanoTime();
+                gatewayLatency.record(now - startedAt, TimeUnit.NANOSECONDS);
+                for (Outgoing outgoing : batch) {
+                    dispatchLatency.record(now - outgoing.enqueuedAt(), TimeUnit.NANOSECONDS);
+                }
+                sent.increment(batch.size());
+                return;
+            } catch (IOException | RuntimeException e) {
+                gatewayLatency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                if (attempt >= maxAttempts || !running) {
+                    log.warn("Dropping {} verification codes after {} attempts", batch.size(), attempt, e);
+                    failed.increment(batch.size());
+                    return;
+                }
+                log.info("SMS gateway rejected {} verification codes, attempt {}: {}",
+                        batch.size(), attempt, e.toString());
+                retried.increment();
+                try {
+                    TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+                } catch (InterruptedException interrupted) {
+                    // Остановка: оставшиеся попытки не выполняются.
+                }
+                backoff = Math.min(backoff * 2, maxRetryBackoff);
+            }
+        }
+    }
+
+    private record Outgoing(SmsGateway.Message message, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.karasov.transfer.service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Шлюз отправки SMS с верификационными кодами.
+ * <p>
+ * Вызывается только потоком {@link SmsDispatcher} и может блокировать его на время обращения
+ * к внешнему сервису. Реализация выбирается свойством {@code transfer.sms.gateway}.
+ */
+public interface SmsGateway {
+
+    /**
+     * Отправляет пакет сообщений. Пакет считается отправленным, если метод завершился без исключения;
+     * при исключении пакет отправляется повторно целиком, поэтому отправка должна быть идемпотентной
+     * по идентификатору операции.
+     *
+     * @param messages сообщения пакета
+     * @throws IOException если пакет не принят шлюзом
+     */
+    void send(List<Message> messages) throws IOException;
+
+    /**
+     * SMS с верификационным кодом.
+     *
+     * @param operationId идентификатор операции
+     * @param cardNumber  номер карты отправителя, по которой определяется получатель SMS
+     * @param code        верификационный код
+     */
+    record Message(long operationId, String cardNumber, String code) {
+    }
+}
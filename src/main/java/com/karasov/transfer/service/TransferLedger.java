@@ -0,0 +1,35 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.models.Card;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Проведение изменений балансов карт по подтвержденным переводам.
+ * <p>
+ * Реализация выбирается свойством {@code transfer.ledger.mode}.
+ */
+public interface TransferLedger {
+
+    /**
+     * Проводит перевод суммы, ранее удержанной на карте отправителя ({@link Card#hold(long)}),
+     * и записывает его в журнал. Наличие средств не проверяется: удержанная сумма уже списана
+     * с доступного баланса, поэтому перевод не может быть отклонен.
+     * <p>
+     * Балансы изменяются только после фиксации записи в журнале. Если запись не зафиксирована,
+     * future завершается с ошибкой, а балансы и удержание остаются прежними.
+     *
+     * @param operationId    идентификатор операции
+     * @param cardFrom       карта отправителя
+     * @param cardFromNumber номер карты отправителя
+     * @param cardTo         карта получателя
+     * @param cardToNumber   номер карты получателя
+     * @param amount         удержанная сумма с учетом комиссии в копейках
+     * @return future, завершающийся значением {@code true} после фиксации перевода в журнале
+     * и изменения балансов
+     */
+    CompletableFuture<Boolean> capture(long operationId,
+                                       Card cardFrom, long cardFromNumber,
+                                       Card cardTo, long cardToNumber,
+                                       long amount);
+}
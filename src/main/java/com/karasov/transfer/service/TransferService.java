@@ -4,193 +4,311 @@ import com.karasov.transfer.controllers.TransferController;
 import com.karasov.transfer.dto.ConfirmOperationDTO;
 import com.karasov.transfer.dto.RegisterStatusDto;
 import com.karasov.transfer.dto.RequestDto;
+import com.karasov.transfer.dto.TransferStatus;
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.metrics.TransferMetrics.Stage;
 import com.karasov.transfer.models.Card;
+import com.karasov.transfer.models.Currency;
 import com.karasov.transfer.models.Request;
 import com.karasov.transfer.repository.CardRepository;
+import com.karasov.transfer.repository.TransferHistory;
+import com.karasov.transfer.repository.TransferJournal.UncertainCommitException;
 import com.karasov.transfer.repository.TransferRepository;
+import com.karasov.transfer.utils.CardNumbers;
+import com.karasov.transfer.utils.FxRateTable;
+import com.karasov.transfer.utils.Money;
 import com.karasov.transfer.utils.SMSCodeGenerator;
+import com.karasov.transfer.utils.ValidationResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
 
 import static com.karasov.transfer.utils.RequestMapper.requestDtoToRequest;
 import static com.karasov.transfer.utils.SMSCodeGenerator.generateVerificationSMSCode;
-import static com.karasov.transfer.utils.Validator.validateCVV;
-import static com.karasov.transfer.utils.Validator.validateCardNumber;
-import static com.karasov.transfer.utils.Validator.validateExpireDate;
-import static com.karasov.transfer.utils.Validator.validatePaymentCurrency;
-import static com.karasov.transfer.utils.Validator.validatePaymentValue;
-import static java.lang.Math.round;
+import static com.karasov.transfer.utils.Validator.validate;
 
 /**
  * Сервис, отвечающий за обработку переводов денежных средств.
  * <p>
  * Класс принимает запросы от контроллера {@link TransferController},
  * выполняет валидацию данных о переводе и управляет процессом перевода средств
- * между картами. Он также отслеживает количество проведенных операций и
+ * между картами: сумма перевода удерживается на карте отправителя при регистрации
+ * и переводится при подтверждении. Он также присваивает операциям идентификаторы {@link OperationIdGenerator} и
  * генерирует верификационные коды для подтверждения переводов.
  */
 @Service
 public class TransferService {
-    private static final AtomicInteger operationId = new AtomicInteger(0);
-    private final static double COMMISSION = 0.01;
     private final TransferRepository transferRepository;
     private final CardRepository cardRepository;
+    private final TransferLedger transferLedger;
+    private final TransferMetrics metrics;
+    private final OperationIdGenerator operationIdGenerator;
+    private final VelocityEngine velocityEngine;
+    private final SmsDispatcher smsDispatcher;
+    private final FxRates fxRates;
+    private final TransferHistory transferHistory;
+    private final int maxCodeAttempts;
+    private final boolean luhnCheck;
 
     @Autowired
-    public TransferService(TransferRepository transferRepository, CardRepository cardRepository) {
+    public TransferService(TransferRepository transferRepository,
+                           CardRepository cardRepository,
+                           TransferLedger transferLedger,
+                           TransferMetrics metrics,
+                           OperationIdGenerator operationIdGenerator,
+                           VelocityEngine velocityEngine,
+                           SmsDispatcher smsDispatcher,
+                           FxRates fxRates,
+                           TransferHistory transferHistory,
+                           @Value("${transfer.confirm.max-code-attempts:3}") int maxCodeAttempts,
+                           @Value("${transfer.validation.luhn-check:true}") boolean luhnCheck) {
         this.transferRepository = transferRepository;
         this.cardRepository = cardRepository;
+        this.transferLedger = transferLedger;
+        this.metrics = metrics;
+        this.operationIdGenerator = operationIdGenerator;
+        this.velocityEngine = velocityEngine;
+        this.smsDispatcher = smsDispatcher;
+        this.fxRates = fxRates;
+        this.transferHistory = transferHistory;
+        this.maxCodeAttempts = maxCodeAttempts;
+        this.luhnCheck = luhnCheck;
     }
 
     /**
      * Обрабатывает запрос на перевод средств.
      * <p>
      * Принимает данные о переводе, присваивает уникальный номер операции и проверяет
-     * корректность введенных данных. Если данные корректны, генерирует
-     * верификационный код и сохраняет запрос в репозитории.
+     * корректность введенных данных и карт. Если данные корректны, конвертирует сумму перевода
+     * в рубли по текущему курсу {@link FxRates} и удерживает ее с комиссией на карте отправителя, генерирует верификационный код, сохраняет запрос
+     * в репозитории и ставит код в очередь на отправку {@link SmsDispatcher}, не дожидаясь
+     * отправки. Если средств недостаточно, запрос отклоняется сразу, до отправки кода.
+     * Если количество ожидающих подтверждения запросов или неотправленных кодов достигло
+     * предела, запрос отклоняется, а удержание снимается.
      * <p>
      * @param requestDto объект, содержащий данные для перевода, включая информацию о картах и сумму перевода.
      * @return объект {@link RegisterStatusDto}, инкапсулирующий статус валидации запроса и номер операции.
+     * Текст сообщения о результате не строится, пока к нему не обратятся.
      */
     public RegisterStatusDto transfer(RequestDto requestDto) {
+        long stageStart = metrics.start();
         Request request = requestDtoToRequest(requestDto);
-        request.setId(String.valueOf(operationId.incrementAndGet()));
-        Card cardFrom = request.getCardFrom();
-
-        RegisterStatusDto registerStatusDto = new RegisterStatusDto(
-                (
-                        validateCardNumber(cardFrom.getCardNumber())
-                                && validateCardNumber(request.getCardToNumber())
-                                && validateExpireDate(cardFrom.getValidTill())
-                                && validateCVV(cardFrom.getCvv())
-                                && validatePaymentValue(request.getPayment().getPaymentValue())
-                                && validatePaymentCurrency(request.getPayment().getCurrency())
-                ),
-                request.getId(),
-                String.format(
-                        "Error input data for transfer with operationId: %s " +
-                                "card from: %s, " +
-                                "card to: %s, " +
-                                "amount: %.2f.",
-                        request.getId(),
-                        requestDto.cardFromNumber(),
-                        requestDto.cardToNumber(),
-                        requestDto.amount().value()
-                )
-        );
-
-        if (registerStatusDto.requestValidated()) {
-            request.setVerificationCode(generateVerificationSMSCode());
-            transferRepository.addRequest(request);
+        request.setId(operationIdGenerator.nextId());
+        stageStart = metrics.lap(Stage.MAPPING, stageStart);
+        ValidationResult validationResult = validate(request, luhnCheck);
+        stageStart = metrics.lap(Stage.VALIDATION, stageStart);
+        if (!validationResult.isValid()) {
+            return new RegisterStatusDto(
+                    TransferStatus.INVALID_INPUT,
+                    String.valueOf(request.getId()),
+                    requestDto.cardFromNumber(),
+                    requestDto.cardToNumber(),
+                    request.getPayment().getPaymentValue(),
+                    0L,
+                    validationResult.field());
+        }
+
+        Card cardFrom = cardRepository.getCardByNumber(request.getCardFrom().getCardNumber());
+        Card cardTo = cardRepository.getCardByNumber(request.getCardToNumber());
+        stageStart = metrics.lap(Stage.CARD_LOOKUP, stageStart);
+        if (cardFrom == null || cardTo == null) {
+            return RegisterStatusDto.of(TransferStatus.CARD_NOT_FOUND, String.valueOf(request.getId()));
+        }
+        if (!cardFrom.equals(request.getCardFrom())) {
+            return RegisterStatusDto.of(TransferStatus.INVALID_SENDER_CARD, String.valueOf(request.getId()));
+        }
+        if (!cardTo.getCardNumber().equals(request.getCardToNumber())) {
+            return RegisterStatusDto.of(TransferStatus.INVALID_RECIPIENT_CARD, String.valueOf(request.getId()));
+        }
+
+        FxRateTable rates = fxRates.table();
+        Currency currency = request.getPayment().getCurrency();
+        if (!rates.supports(currency)) {
+            return RegisterStatusDto.of(TransferStatus.FX_RATE_UNAVAILABLE, String.valueOf(request.getId()));
+        }
+        long amount;
+        long heldAmount;
+        try {
+            amount = rates.toKopecks(currency, request.getPayment().getPaymentValue());
+            heldAmount = Money.withCommission(amount);
+        } catch (ArithmeticException e) {
+            // Сумма не помещается в long, а значит заведомо больше любого баланса.
+            return RegisterStatusDto.of(TransferStatus.NOT_ENOUGH_MONEY, String.valueOf(request.getId()));
         }
-        System.out.println(registerStatusDto);
-        return registerStatusDto;
+        boolean held = request.hold(cardFrom, cardTo, amount, heldAmount);
+        metrics.lap(Stage.HOLD, stageStart);
+        if (!held) {
+            return new RegisterStatusDto(
+                    TransferStatus.NOT_ENOUGH_MONEY,
+                    String.valueOf(request.getId()),
+                    cardFrom.getCardNumber(),
+                    cardTo.getCardNumber(),
+                    amount,
+                    heldAmount - amount,
+                    null);
+        }
+
+        request.setVerificationCode(generateVerificationSMSCode());
+        if (!transferRepository.addRequest(request)) {
+            request.releaseHold();
+            return RegisterStatusDto.of(TransferStatus.PENDING_LIMIT_EXCEEDED, String.valueOf(request.getId()));
+        }
+        if (!smsDispatcher.enqueue(request.getId(), request.getCardFrom().getCardNumber(),
+                request.getVerificationCode())) {
+            if (transferRepository.removeRequest(request)) {
+                request.releaseHold();
+            }
+            return RegisterStatusDto.of(TransferStatus.SMS_OUTBOX_FULL, String.valueOf(request.getId()));
+        }
+        return RegisterStatusDto.of(TransferStatus.REGISTERED, String.valueOf(request.getId()));
     }
 
     /**
      * Подтверждает перевод средств по полученному верификационному коду.
      * <p>
-     * Проверяет наличие запроса, соответствие верификационного кода и
-     * проводит перевод средств, если все проверки успешны.
+     * Проверяет наличие запроса, соответствие верификационного кода (сравнением за постоянное время) и
+     * проводит перевод суммы, удержанной при регистрации. После {@code transfer.confirm.max-code-attempts}
+     * неверных кодов запрос удаляется, а удержание снимается. Карты и наличие средств уже проверены
+     * при регистрации, поэтому подтверждение не ищет карты и не может быть отклонено из-за нехватки
+     * средств. Перед переводом запрос удаляется из репозитория, поэтому одна операция не может быть
+     * проведена дважды. Перевод, нарушающий скоростные правила {@link VelocityEngine}, отклоняется
+     * до проведения, а удержание снимается. Если перевод не удалось зафиксировать в журнале,
+     * удержание также снимается, а подтверждение завершается статусом {@code TRANSFER_FAILED}. Если запись
+     * могла остаться в журнале ({@link UncertainCommitException}), удержание сохраняется до перезапуска,
+     * а подтверждение завершается статусом {@code TRANSFER_OUTCOME_UNKNOWN}.
+     * Проведенные, отклоненные скоростными правилами и незафиксированные переводы записываются
+     * в {@link TransferHistory}; для проведенного перевода сохраняется фактически удержанная комиссия.
+     * Идентификатор операции, не являющийся числом, считается ненайденным.
      * </p>
      * @param confirmOperationDTO объект, содержащий идентификатор операции и верификационный код.
      * @return объект {@link RegisterStatusDto}, инкапсулирующий статус подтверждения операции.
      */
     public RegisterStatusDto confirm(ConfirmOperationDTO confirmOperationDTO) {
+        return confirm(confirmOperationDTO, true).join();
+    }
+
+    /**
+     * Подтверждает перевод средств так же, как {@link #confirm(ConfirmOperationDTO)}, не ожидая
+     * фиксации перевода в журнале: результат завершается в общем пуле {@link ForkJoinPool#commonPool()},
+     * а не в потоке {@link TransferLedger}, проводящем переводы.
+     *
+     * @param confirmOperationDTO объект, содержащий идентификатор операции и верификационный код.
+     * @return future с объектом {@link RegisterStatusDto}, инкапсулирующим статус подтверждения операции.
+     */
+    public CompletableFuture<RegisterStatusDto> confirmAsync(ConfirmOperationDTO confirmOperationDTO) {
+        return confirm(confirmOperationDTO, false);
+    }
 
-        Optional<Request> optionalRequest = Optional.ofNullable(transferRepository
-                .getRequest(confirmOperationDTO.operationId()));
+    /**
+     * @param waitInCaller {@code true}, если вызывающий поток ожидает проведения перевода и сам завершает
+     *                     подтверждение; иначе подтверждение завершается в общем пуле
+     */
+    private CompletableFuture<RegisterStatusDto> confirm(ConfirmOperationDTO confirmOperationDTO,
+                                                         boolean waitInCaller) {
+        long stageStart = metrics.start();
+        long id = OperationIdGenerator.parse(confirmOperationDTO.operationId());
+        Optional<Request> optionalRequest = id == OperationIdGenerator.INVALID
+                ? Optional.empty()
+                : Optional.ofNullable(transferRepository.getRequest(id));
+        metrics.lap(Stage.PENDING_LOOKUP, stageStart);
         if (optionalRequest.isEmpty()) {
-            return new RegisterStatusDto(
-                    false,
-                    confirmOperationDTO.operationId(),
-                    String.format("Request with operationId %s not found.", confirmOperationDTO.operationId()));
+            return confirmFailed(TransferStatus.NOT_FOUND, confirmOperationDTO.operationId());
         }
 
         Request request = optionalRequest.get();
-        if (!request.getVerificationCode().equals(confirmOperationDTO.code())) {
-            return new RegisterStatusDto(
-                    false, request.getId(),
-                    String.format("Invalid verification code for transfer with operationId: %s.", request.getId()));
+        if (!SMSCodeGenerator.matches(request.getVerificationCode(), confirmOperationDTO.code())) {
+            if (request.registerFailedCodeAttempt() < maxCodeAttempts) {
+                return confirmFailed(TransferStatus.INVALID_CODE, request.getId());
+            }
+            if (transferRepository.removeRequest(request)) {
+                request.releaseHold();
+            }
+            return confirmFailed(TransferStatus.CODE_ATTEMPTS_EXCEEDED, request.getId());
         }
 
-        Optional<Card> optionalCardFrom =
-                Optional.ofNullable(cardRepository.getCardByNumber(request.getCardFrom().getCardNumber()));
-        Optional<Card> optionalCardTo =
-                Optional.ofNullable(cardRepository.getCardByNumber(request.getCardToNumber()));
-        if (optionalCardFrom.isEmpty() || optionalCardTo.isEmpty()) {
-            return new RegisterStatusDto(
-                    false, request.getId(),
-                    String.format("Card not found for transfer with operationId: %s.", request.getId()));
+        if (!transferRepository.removeRequest(request)) {
+            return confirmFailed(TransferStatus.NOT_FOUND, request.getId());
         }
 
-        Card cardFrom = optionalCardFrom.get();
-        if (!cardFrom.equals(request.getCardFrom())) {
-            return new RegisterStatusDto(
-                    false, request.getId(),
-                    String.format("Invalid sender's card details for transfer with operationId: %s.", request.getId()));
+        Card cardFrom = request.getSourceCard();
+        Card cardTo = request.getTargetCard();
+        long cardFromNumber = CardNumbers.parse(cardFrom.getCardNumber());
+        long cardToNumber = CardNumbers.parse(cardTo.getCardNumber());
+        long amount = request.getConvertedAmount();
+        long reservedAt = metrics.start();
+        boolean withinVelocity = velocityEngine.tryReserve(cardFromNumber, amount, reservedAt);
+        metrics.lap(Stage.VELOCITY_CHECK, reservedAt);
+        if (!withinVelocity) {
+            request.releaseHold();
+            transferHistory.record(request.getId(), cardFromNumber, cardToNumber, amount, 0L,
+                    TransferStatus.VELOCITY_LIMIT_EXCEEDED);
+            return confirmFailed(TransferStatus.VELOCITY_LIMIT_EXCEEDED, request.getId());
         }
 
-        Card cardTo = optionalCardTo.get();
-        if (!cardTo.getCardNumber().equals(request.getCardToNumber())) {
+        CompletableFuture<Boolean> captured = transferLedger.capture(
+                request.getId(),
+                cardFrom, cardFromNumber,
+                cardTo, cardToNumber,
+                request.getHeldAmount());
+        long commitStart = metrics.start();
+        BiFunction<Boolean, Throwable, RegisterStatusDto> complete = (ignored, failure) -> {
+            metrics.lap(Stage.JOURNAL_COMMIT, commitStart);
+            if (failure != null && isUncertain(failure)) {
+                // Запись может быть воспроизведена при восстановлении: удержание остается до перезапуска,
+                // иначе удержанная сумма могла бы быть потрачена повторно.
+                transferHistory.record(request.getId(), cardFromNumber, cardToNumber, amount, 0L,
+                        TransferStatus.TRANSFER_OUTCOME_UNKNOWN);
+                metrics.confirmFailed(TransferStatus.TRANSFER_OUTCOME_UNKNOWN);
+                return RegisterStatusDto.of(TransferStatus.TRANSFER_OUTCOME_UNKNOWN, String.valueOf(request.getId()));
+            }
+            if (failure != null) {
+                // Балансы изменяются только после фиксации журнала, поэтому удержание еще не списано.
+                velocityEngine.release(cardFromNumber, amount, reservedAt);
+                request.releaseHold();
+                transferHistory.record(request.getId(), cardFromNumber, cardToNumber, amount, 0L,
+                        TransferStatus.TRANSFER_FAILED);
+                metrics.confirmFailed(TransferStatus.TRANSFER_FAILED);
+                return RegisterStatusDto.of(TransferStatus.TRANSFER_FAILED, String.valueOf(request.getId()));
+            }
+            transferHistory.record(request.getId(), cardFromNumber, cardToNumber, amount,
+                    request.getHeldAmount() - amount, TransferStatus.CONFIRMED);
             return new RegisterStatusDto(
-                    false, request.getId(),
-                    String.format("Invalid recipient's card number for transfer with operationId: %s.", request.getId()));
+                    TransferStatus.CONFIRMED,
+                    String.valueOf(request.getId()),
+                    cardFrom.getCardNumber(),
+                    cardTo.getCardNumber(),
+                    amount,
+                    request.getHeldAmount() - amount,
+                    null);
+        };
+        if (waitInCaller) {
+            // Завершенный future выполняет обработчик в вызывающем потоке, а не в потоке проведения.
+            captured.exceptionally(failure -> false).join();
+            return captured.handle(complete);
         }
-
-
-        boolean successTransferStatus = makeTransfer(cardTo, cardFrom, request.getPayment().getPaymentValue());
-        String logMessage = successTransferStatus ? "Success confirmation " : "Not enough money ";
-
-        return new RegisterStatusDto(
-                successTransferStatus,
-                request.getId(),
-                logMessage + String.format(
-                        "for transfer with operationId: %s " +
-                                "card from: %s, " +
-                                "card to: %s, " +
-                                "amount: %.2f, " +
-                                "commission: %.2f",
-                        request.getId(),
-                        cardFrom.getCardNumber(),
-                        cardTo.getCardNumber(),
-                        request.getPayment().getPaymentValue(),
-                        request.getPayment().getPaymentValue() * COMMISSION
-                )
-        );
+        return captured.handleAsync(complete);
     }
 
-    /**
-     * Выполняет перевод средств между картами.
-     * <p>
-     * Проверяет наличие достаточных средств на карте отправителя,
-     * осуществляет перевод и возвращает статус выполнения.
-     * </p>
-     * @param cardTo карта получателя
-     * @param cardFrom карта отправителя
-     * @param payment сумма перевода
-     * @return {@code true}, если перевод выполнен успешно; {@code false}, если средств недостаточно.
-     */
-    private boolean makeTransfer(Card cardTo, Card cardFrom, double payment) {
-        double paymentWithCommission = round(payment * (1 + COMMISSION) * 100) / 100.0;
-
-        if (cardFrom.getBalance() < paymentWithCommission) {
-            return false;
+    private static boolean isUncertain(Throwable failure) {
+        Throwable cause = failure;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
         }
+        return cause instanceof UncertainCommitException;
+    }
 
-        final Lock transferLock = new ReentrantLock();
-        transferLock.lock();
-        try {
-            cardTo.refillBalance(paymentWithCommission);
-            cardFrom.withdrawMoney(paymentWithCommission);
-            return true;
-        } finally {
-            transferLock.unlock();
-        }
+    private CompletableFuture<RegisterStatusDto> confirmFailed(TransferStatus status, String operationId) {
+        metrics.confirmFailed(status);
+        return CompletableFuture.completedFuture(RegisterStatusDto.of(status, operationId));
+    }
+
+    private CompletableFuture<RegisterStatusDto> confirmFailed(TransferStatus status, long operationId) {
+        return confirmFailed(status, String.valueOf(operationId));
     }
 }
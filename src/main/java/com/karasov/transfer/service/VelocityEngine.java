@@ -0,0 +1,123 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.utils.ConcurrentLongHashMap;
+import com.karasov.transfer.utils.SlidingWindowCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Проверка скоростных правил по карте отправителя: не более {@code max-count} переводов
+ * и не более {@code max-amount} рублей с одной карты за окно {@code window}.
+ * <p>
+ * Для каждой карты, с которой недавно выполнялись переводы, ведется {@link SlidingWindowCounter}
+ * в {@link ConcurrentLongHashMap}. Проверка выполняется без блокировок и за фиксированное число
+ * операций, не зависящее от количества переводов. Перевод резервирует место в окне до проведения;
+ * если перевод не проведен, резерв откатывается через {@link #release(long, long, long)}.
+ * Счетчики карт, по которым в течение окна не было переводов, периодически удаляются.
+ */
+@Component
+public class VelocityEngine {
+
+    private static final int MAX_COUNT = (1 << 15) - 1;
+
+    private final boolean enabled;
+    private final int bucketCount;
+    private final long bucketWidth;
+    private final long maxCount;
+    private final long maxAmount;
+    private final ConcurrentLongHashMap<SlidingWindowCounter> counters = new ConcurrentLongHashMap<>(1 << 16);
+
+    /**
+     * Создает проверку без метрик.
+     */
+    public VelocityEngine(boolean enabled, Duration window, int buckets, int maxCount, long maxAmount) {
+        if (buckets < 1 || window.toNanos() < buckets) {
+            throw new IllegalArgumentException("Invalid velocity window: " + window + " in " + buckets + " buckets");
+        }
+        if (maxCount < 1 || maxCount > MAX_COUNT || maxAmount < 1
+                || maxAmount > SlidingWindowCounter.MAX_AMOUNT / 200) {
+            throw new IllegalArgumentException("Invalid velocity limits: " + maxCount + " transfers, " + maxAmount);
+        }
+        this.enabled = enabled;
+        this.bucketCount = buckets;
+        this.bucketWidth = window.toNanos() / buckets;
+        this.maxCount = maxCount;
+        this.maxAmount = maxAmount * 100;
+    }
+
+    /**
+     * @param enabled   включены ли скоростные правила
+     * @param window    длина окна
+     * @param buckets   количество корзин окна; определяет точность сдвига окна
+     * @param maxCount  предел количества переводов с карты за окно
+     * @param maxAmount предел суммы переводов с карты за окно, рублей
+     * @param registry  реестр метрик
+     */
+    @Autowired
+    public VelocityEngine(@Value("${transfer.velocity.enabled:true}") boolean enabled,
+                          @Value("${transfer.velocity.window:10m}") Duration window,
+                          @Value("${transfer.velocity.buckets:60}") int buckets,
+                          @Value("${transfer.velocity.max-count:20}") int maxCount,
+                          @Value("${transfer.velocity.max-amount:100000}") long maxAmount,
+                          MeterRegistry registry) {
+        this(enabled, window, buckets, maxCount, maxAmount);
+        Gauge.builder("transfer.velocity.cards", counters, ConcurrentLongHashMap::size)
+                .description("Cards with transfers inside the velocity window")
+                .register(registry);
+    }
+
+    /**
+     * Резервирует перевод в окне карты отправителя.
+     *
+     * @param cardFrom номер карты отправителя
+     * @param amount   сумма перевода в копейках
+     * @param now      текущее время по {@link System#nanoTime()}; то же значение передается в {@link #release}
+     * @return {@code true}, если перевод не нарушает скоростных правил
+     */
+    public boolean tryReserve(long cardFrom, long amount, long now) {
+        if (!enabled) {
+            return true;
+        }
+        SlidingWindowCounter counter = counters.get(cardFrom);
+        if (counter == null) {
+            SlidingWindowCounter created = new SlidingWindowCounter(bucketCount);
+            counter = counters.putIfAbsent(cardFrom, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter.tryAdd(now, amount, bucketWidth, maxCount, maxAmount);
+    }
+
+    /**
+     * Откатывает резерв перевода, который не был проведен.
+     *
+     * @param cardFrom   номер карты отправителя
+     * @param amount     сумма перевода в копейках
+     * @param reservedAt время, переданное в {@link #tryReserve}
+     */
+    public void release(long cardFrom, long amount, long reservedAt) {
+        if (!enabled) {
+            return;
+        }
+        SlidingWindowCounter counter = counters.get(cardFrom);
+        if (counter != null) {
+            counter.remove(reservedAt, amount, bucketWidth);
+        }
+    }
+
+    /**
+     * Удаляет счетчики карт, все переводы которых вышли из окна.
+     */
+    @Scheduled(fixedDelayString = "${transfer.velocity.eviction-interval:PT1M}")
+    public void evictIdleCards() {
+        long now = System.nanoTime();
+        counters.removeIf(counter -> counter.isIdle(now, bucketWidth));
+    }
+}
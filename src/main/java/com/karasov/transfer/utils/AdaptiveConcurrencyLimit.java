@@ -0,0 +1,106 @@
+package com.karasov.transfer.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Адаптивное ограничение количества одновременно обрабатываемых запросов (AIMD).
+ * <p>
+ * Запрос получает разрешение, только если число выполняющихся запросов меньше текущего предела.
+ * По завершении запроса его задержка сравнивается с целевой: если задержка не превышена и предел
+ * используется хотя бы наполовину, предел увеличивается на единицу за каждые {@code limit} таких
+ * запросов (аддитивный рост); если превышена — предел умножается на коэффициент уменьшения
+ * (мультипликативное снижение), но не чаще одного раза за целевую задержку, чтобы запросы,
+ * начатые до снижения, не уменьшали предел повторно.
+ * <p>
+ * Все операции выполняются без блокировок.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTarget;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger successes = new AtomicInteger();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param initialLimit  начальный предел
+     * @param minLimit      минимальный предел
+     * @param maxLimit      максимальный предел
+     * @param latencyTarget целевая задержка запроса, нс
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyTarget) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(
+                    "Invalid limits: initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTarget = latencyTarget;
+        this.limit = new AtomicInteger(initialLimit);
+    }
+
+    /**
+     * Получает разрешение на обработку запроса.
+     *
+     * @return {@code true}, если разрешение получено и должно быть возвращено
+     * через {@link #release(long)} или {@link #cancel()}
+     */
+    public boolean tryAcquire() {
+        for (; ; ) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Возвращает разрешение и учитывает задержку запроса при пересчете предела.
+     *
+     * @param startedAt момент получения разрешения по {@link System#nanoTime()}
+     */
+    public void release(long startedAt) {
+        long now = System.nanoTime();
+        int used = inFlight.getAndDecrement();
+        int current = limit.get();
+        if (now - startedAt > latencyTarget) {
+            long last = lastDecrease.get();
+            if (now - last >= latencyTarget && lastDecrease.compareAndSet(last, now)) {
+                limit.compareAndSet(current, Math.max(minLimit, (int) (current * BACKOFF)));
+                successes.set(0);
+            }
+        } else if (used * 2 >= current && successes.incrementAndGet() >= current) {
+            successes.set(0);
+            limit.compareAndSet(current, Math.min(maxLimit, current + 1));
+        }
+    }
+
+    /**
+     * Возвращает разрешение без учета задержки, например для запроса, отклоненного после его получения.
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return текущий предел
+     */
+    public int limit() {
+        return limit.get();
+    }
+
+    /**
+     * @return количество выполняющихся запросов
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,57 @@
+package com.karasov.transfer.utils;
+
+/**
+ * Утилитарный класс для работы с номерами карт в примитивном представлении.
+ * <p>
+ * Шестнадцатизначный номер карты целиком помещается в {@code long}, что позволяет
+ * индексировать карты без создания строк и упаковки ключей.
+ */
+public class CardNumbers {
+
+    /**
+     * Длина номера карты.
+     */
+    public static final int LENGTH = 16;
+
+    /**
+     * Значение, возвращаемое при невозможности разобрать номер карты.
+     */
+    public static final long INVALID = -1L;
+
+    /**
+     * Преобразует номер карты из строки в {@code long} за один проход без выделения памяти.
+     *
+     * @param cardNumber номер карты, состоящий ровно из 16 цифр.
+     * @return номер карты в виде {@code long} или {@link #INVALID}, если строка не является номером карты.
+     */
+    public static long parse(CharSequence cardNumber) {
+        if (cardNumber == null || cardNumber.length() != LENGTH) {
+            return INVALID;
+        }
+        long result = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            int digit = cardNumber.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Преобразует номер карты из {@code long} в строку из 16 цифр, дополняя его ведущими нулями.
+     *
+     * @param cardNumber номер карты от 0 до 9999999999999999
+     * @return номер карты, состоящий ровно из 16 цифр
+     */
+    public static String format(long cardNumber) {
+        char[] digits = new char[LENGTH];
+        long rest = cardNumber;
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + rest % 10);
+            rest /= 10;
+        }
+        return new String(digits);
+    }
+}
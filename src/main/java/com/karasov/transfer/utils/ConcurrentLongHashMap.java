@@ -0,0 +1,321 @@
+package com.karasov.transfer.utils;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * Потокобезопасная хэш-таблица с примитивными ключами типа {@code long}.
+ * <p>
+ * Таблица разбита на сегменты, каждый из которых представляет собой таблицу с открытой адресацией
+ * и линейным пробированием, защищенную собственной {@link StampedLock}. Чтение выполняется
+ * оптимистично, без захвата блокировки и записи в разделяемую память; при конкурентном изменении
+ * сегмента чтение повторяется под блокировкой чтения. Запись захватывает блокировку только
+ * своего сегмента. Удаление выполняется сдвигом последующих элементов цепочки, без меток удаления.
+ * <p>
+ * Значение {@code null} не допускается.
+ *
+ * @param <V> тип значений
+ */
+public class ConcurrentLongHashMap<V> {
+
+    private static final int DEFAULT_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    /**
+     * Создает таблицу с количеством сегментов по умолчанию.
+     *
+     * @param expectedSize ожидаемое количество элементов
+     */
+    public ConcurrentLongHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Создает таблицу.
+     *
+     * @param expectedSize ожидаемое количество элементов
+     * @param segmentCount количество сегментов, округляется вверх до степени двойки
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongHashMap(int expectedSize, int segmentCount) {
+        int count = Math.max(1, Integer.highestOneBit(Math.max(segmentCount, 1) - 1) << 1);
+        segments = new Segment[count];
+        int perSegment = Math.max(MIN_SEGMENT_CAPACITY, expectedSize / count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(LongHashMap.capacityFor(perSegment));
+        }
+        segmentMask = count - 1;
+    }
+
+    /**
+     * Получает значение по ключу.
+     *
+     * @param key ключ для поиска
+     * @return значение, если ключ найден; {@code null} в противном случае
+     */
+    public V get(long key) {
+        return segment(key).get(key);
+    }
+
+    /**
+     * Добавляет значение по ключу или заменяет существующее.
+     *
+     * @param key   ключ
+     * @param value значение, не {@code null}
+     * @return предыдущее значение или {@code null}
+     */
+    public V put(long key, V value) {
+        return segment(key).put(key, value, false);
+    }
+
+    /**
+     * Добавляет значение, если по ключу еще нет значения.
+     *
+     * @param key   ключ
+     * @param value значение, не {@code null}
+     * @return текущее значение, если оно уже было; {@code null}, если значение добавлено
+     */
+    public V putIfAbsent(long key, V value) {
+        return segment(key).put(key, value, true);
+    }
+
+    /**
+     * Удаляет значение по ключу.
+     *
+     * @param key ключ
+     * @return удаленное значение или {@code null}, если ключ не найден
+     */
+    public V remove(long key) {
+        return segment(key).remove(key, null);
+    }
+
+    /**
+     * Удаляет значение по ключу, только если оно совпадает (по ссылке) с ожидаемым.
+     *
+     * @param key   ключ
+     * @param value ожидаемое значение
+     * @return {@code true}, если значение удалено
+     */
+    public boolean remove(long key, V value) {
+        return segment(key).remove(key, value) != null;
+    }
+
+    /**
+     * Удаляет все значения, удовлетворяющие условию. Сегменты обходятся по очереди,
+     * каждый под своей блокировкой записи, поэтому остальные сегменты остаются доступными.
+     *
+     * @param filter условие удаления
+     * @return количество удаленных значений
+     */
+    public int removeIf(Predicate<? super V> filter) {
+        int removed = 0;
+        for (Segment<V> segment : segments) {
+            removed += segment.removeIf(filter);
+        }
+        return removed;
+    }
+
+    /**
+     * @return количество элементов во всех сегментах
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment<V> segment(long key) {
+        return segments[(int) ((key * 0xC2B2AE3D27D4EB4FL) >>> 32) & segmentMask];
+    }
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private long[] keys;
+        private Object[] values;
+        private int size;
+
+        private Segment(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+
+        V get(long key) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                V value = find(key);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Поиск, безопасный при конкурентном изменении сегмента: массивы могут оказаться
+         * из разных поколений таблицы, в этом случае результат будет отброшен при проверке штампа.
+         */
+        @SuppressWarnings("unchecked")
+        private V find(long key) {
+            long[] keys = this.keys;
+            Object[] values = this.values;
+            int capacity = values.length;
+            if (keys.length != capacity) {
+                return null;
+            }
+            int mask = capacity - 1;
+            int i = LongHashMap.slot(key, shift(capacity));
+            for (int probes = 0; probes < capacity; probes++, i = (i + 1) & mask) {
+                Object value = values[i];
+                if (value == null) {
+                    return null;
+                }
+                if (keys[i] == key) {
+                    return (V) value;
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(long key, V value, boolean onlyIfAbsent) {
+            if (value == null) {
+                throw new IllegalArgumentException("Null values are not supported");
+            }
+            long stamp = lock.writeLock();
+            try {
+                int mask = values.length - 1;
+                for (int i = LongHashMap.slot(key, shift(values.length)); ; i = (i + 1) & mask) {
+                    Object current = values[i];
+                    if (current == null) {
+                        keys[i] = key;
+                        values[i] = value;
+                        if (++size > values.length - (values.length >>> 2)) {
+                            resize();
+                        }
+                        return null;
+                    }
+                    if (keys[i] == key) {
+                        if (!onlyIfAbsent) {
+                            values[i] = value;
+                        }
+                        return (V) current;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(long key, Object expected) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = values.length - 1;
+                int shift = shift(values.length);
+                for (int i = LongHashMap.slot(key, shift); ; i = (i + 1) & mask) {
+                    Object current = values[i];
+                    if (current == null) {
+                        return null;
+                    }
+                    if (keys[i] == key) {
+                        if (expected != null && current != expected) {
+                            return null;
+                        }
+                        shiftBack(i, mask, shift);
+                        size--;
+                        return (V) current;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * После удаления слот проверяется повторно: в него мог сдвинуться следующий элемент цепочки.
+         */
+        @SuppressWarnings("unchecked")
+        int removeIf(Predicate<? super V> filter) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = values.length - 1;
+                int shift = shift(values.length);
+                int removed = 0;
+                for (int i = 0; i < values.length; ) {
+                    Object value = values[i];
+                    if (value != null && filter.test((V) value)) {
+                        shiftBack(i, mask, shift);
+                        size--;
+                        removed++;
+                    } else {
+                        i++;
+                    }
+                }
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Освобождает слот {@code hole}, сдвигая на его место элементы, чей идеальный слот
+         * находится не дальше освобождаемого (backward shift deletion).
+         */
+        private void shiftBack(int hole, int mask, int shift) {
+            for (int i = (hole + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+                int ideal = LongHashMap.slot(keys[i], shift);
+                if (((i - ideal) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            values[hole] = null;
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            int capacity = oldValues.length << 1;
+            long[] newKeys = new long[capacity];
+            Object[] newValues = new Object[capacity];
+            int mask = capacity - 1;
+            int shift = shift(capacity);
+            for (int j = 0; j < oldValues.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = LongHashMap.slot(oldKeys[j], shift);
+                    while (newValues[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    newKeys[i] = oldKeys[j];
+                    newValues[i] = oldValues[j];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        private static int shift(int capacity) {
+            return 64 - Integer.numberOfTrailingZeros(capacity);
+        }
+    }
+}
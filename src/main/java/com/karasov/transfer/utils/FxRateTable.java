@@ -0,0 +1,98 @@
+package com.karasov.transfer.utils;
+
+import com.karasov.transfer.models.Currency;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Неизменяемая таблица курсов валют к рублю.
+ * <p>
+ * Курс хранится в фиксированной точке: количество копеек за сотую долю валюты, умноженное на
+ * {@link #RATE_SCALE}, в массиве, индексированном {@link Currency#ordinal()}. Конвертация суммы —
+ * одно умножение и деление над {@code long} без блокировок и создания объектов. При обновлении
+ * курсов строится новая таблица, которая заменяет прежнюю целиком, поэтому перевод всегда видит
+ * согласованный набор курсов.
+ */
+public final class FxRateTable {
+
+    /**
+     * Множитель фиксированной точки: курсы хранятся с шестью знаками после запятой.
+     */
+    public static final long RATE_SCALE = 1_000_000;
+
+    /**
+     * Таблица, в которой известен только рубль.
+     */
+    public static final FxRateTable ROUBLES_ONLY = new FxRateTable(new long[Currency.values().length]);
+
+    private static final int RATE_SCALE_DIGITS = 6;
+
+    private final long[] rates;
+
+    private FxRateTable(long[] rates) {
+        rates[Currency.RUR.ordinal()] = RATE_SCALE;
+        this.rates = rates;
+    }
+
+    /**
+     * Разбирает курсы из строк вида {@code USD=92.4512} (рублей за единицу валюты).
+     * Пустые строки и строки, начинающиеся с {@code #}, пропускаются. Курс рубля всегда равен единице.
+     *
+     * @param lines строки файла курсов
+     * @return таблица курсов
+     * @throws IllegalArgumentException если строка, код валюты или курс некорректны
+     */
+    public static FxRateTable parse(List<String> lines) {
+        long[] rates = new long[Currency.values().length];
+        for (String line : lines) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int separator = trimmed.indexOf('=');
+            Currency currency = separator < 0 ? null : Currency.of(trimmed.substring(0, separator).strip());
+            if (currency == null || currency == Currency.RUR) {
+                throw new IllegalArgumentException("Invalid FX rate line: " + line);
+            }
+            long rate;
+            try {
+                rate = new BigDecimal(trimmed.substring(separator + 1).strip())
+                        .movePointRight(RATE_SCALE_DIGITS)
+                        .setScale(0, RoundingMode.HALF_UP)
+                        .longValueExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid FX rate line: " + line, e);
+            }
+            if (rate <= 0) {
+                throw new IllegalArgumentException("Invalid FX rate line: " + line);
+            }
+            rates[currency.ordinal()] = rate;
+        }
+        return new FxRateTable(rates);
+    }
+
+    /**
+     * @param currency валюта
+     * @return {@code true}, если курс валюты известен
+     */
+    public boolean supports(Currency currency) {
+        return currency != null && rates[currency.ordinal()] != 0;
+    }
+
+    /**
+     * Конвертирует сумму в рубли с округлением до копейки (половина копейки округляется вверх).
+     *
+     * @param currency валюта суммы, курс которой известен ({@link #supports(Currency)})
+     * @param amount   сумма в сотых долях валюты, неотрицательная
+     * @return сумма в копейках
+     * @throws ArithmeticException при переполнении
+     */
+    public long toKopecks(Currency currency, long amount) {
+        if (currency == Currency.RUR) {
+            return amount;
+        }
+        return Math.addExact(Math.multiplyExact(amount, rates[currency.ordinal()]), RATE_SCALE / 2) / RATE_SCALE;
+    }
+}
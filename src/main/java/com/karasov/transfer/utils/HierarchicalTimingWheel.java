@@ -0,0 +1,192 @@
+package com.karasov.transfer.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Иерархическое колесо таймеров.
+ * <p>
+ * Колесо состоит из нескольких уровней по {@code 2^wheelBits} ячеек. Ячейка нулевого уровня
+ * покрывает один тик, ячейка уровня {@code L} — {@code 2^(wheelBits * L)} тиков. Элемент
+ * помещается на самый нижний уровень, интервал которого покрывает его срок, и по мере
+ * приближения срока каскадом опускается на нижние уровни. Добавление, отмена и срабатывание
+ * элемента выполняются за O(1), а продвижение времени затрагивает только наступившие ячейки,
+ * без просмотра всех элементов. Ячейки — двусвязные списки, поэтому отмененный элемент
+ * удаляется из колеса сразу, а не дожидается своего срока.
+ * <p>
+ * Класс не потокобезопасен: все методы должны вызываться из одного потока.
+ *
+ * @param <T> тип элементов
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelBits;
+    private final int mask;
+    private final int levels;
+    private final long maxDelta;
+    private final Timer<T>[][] buckets;
+    private long currentTick;
+    private int size;
+
+    /**
+     * Создает колесо таймеров.
+     *
+     * @param tickMillis длительность тика в миллисекундах
+     * @param wheelBits  двоичный логарифм количества ячеек на уровне
+     * @param levels     количество уровней
+     * @param startTime  текущее время в миллисекундах
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMillis, int wheelBits, int levels, long startTime) {
+        if (tickMillis <= 0 || wheelBits <= 0 || levels <= 0 || wheelBits * levels >= 62) {
+            throw new IllegalArgumentException("Invalid timing wheel geometry");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelBits = wheelBits;
+        this.mask = (1 << wheelBits) - 1;
+        this.levels = levels;
+        this.maxDelta = (1L << (wheelBits * levels)) - 1;
+        this.buckets = new Timer[levels][1 << wheelBits];
+        this.currentTick = startTime / tickMillis;
+    }
+
+    /**
+     * Добавляет элемент со сроком срабатывания.
+     * Элемент с уже наступившим сроком сработает на следующем тике.
+     *
+     * @param item     элемент
+     * @param deadline время срабатывания в миллисекундах
+     * @return таймер элемента для отмены через {@link #cancel(Timer)}
+     */
+    public Timer<T> schedule(T item, long deadline) {
+        long deadlineTick = (deadline + tickMillis - 1) / tickMillis;
+        Timer<T> timer = new Timer<>(item, deadlineTick);
+        place(timer, Math.max(deadlineTick - currentTick, 1));
+        size++;
+        return timer;
+    }
+
+    /**
+     * Удаляет элемент из колеса до наступления его срока.
+     *
+     * @param timer таймер, возвращенный {@link #schedule(Object, long)}
+     * @return {@code true}, если элемент удален; {@code false}, если он уже сработал или отменен
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.level < 0) {
+            return false;
+        }
+        if (timer.prev == null) {
+            buckets[timer.level][timer.slot] = timer.next;
+        } else {
+            timer.prev.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        detach(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Продвигает время колеса и передает обработчику элементы, срок которых наступил.
+     *
+     * @param now       текущее время в миллисекундах
+     * @param onExpired обработчик сработавших элементов
+     */
+    public void advance(long now, Consumer<T> onExpired) {
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = levels - 1; level > 0; level--) {
+                int shift = wheelBits * level;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    cascade(level, (int) (currentTick >>> shift) & mask);
+                }
+            }
+            fire((int) currentTick & mask, onExpired);
+        }
+    }
+
+    /**
+     * @return количество элементов в колесе
+     */
+    public int size() {
+        return size;
+    }
+
+    private void cascade(int level, int slot) {
+        Timer<T> timer = buckets[level][slot];
+        buckets[level][slot] = null;
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            place(timer, Math.max(timer.deadlineTick - currentTick, 0));
+            timer = next;
+        }
+    }
+
+    private void fire(int slot, Consumer<T> onExpired) {
+        Timer<T> timer = buckets[0][slot];
+        buckets[0][slot] = null;
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            if (timer.deadlineTick <= currentTick) {
+                detach(timer);
+                size--;
+                onExpired.accept(timer.item);
+            } else {
+                place(timer, timer.deadlineTick - currentTick);
+            }
+            timer = next;
+        }
+    }
+
+    private static <T> void detach(Timer<T> timer) {
+        timer.level = -1;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * Помещает узел в ячейку самого нижнего уровня, покрывающего смещение {@code delta} тиков.
+     * Смещения за пределами колеса ограничиваются последней ячейкой верхнего уровня:
+     * при ее срабатывании узел будет размещен повторно.
+     */
+    private void place(Timer<T> timer, long delta) {
+        long tick = currentTick + Math.min(delta, maxDelta);
+        int level = 0;
+        while (level < levels - 1 && (delta >>> (wheelBits * (level + 1))) != 0) {
+            level++;
+        }
+        int slot = (int) (tick >>> (wheelBits * level)) & mask;
+        Timer<T> head = buckets[level][slot];
+        timer.prev = null;
+        timer.next = head;
+        if (head != null) {
+            head.prev = timer;
+        }
+        buckets[level][slot] = timer;
+        timer.level = level;
+        timer.slot = slot;
+    }
+
+    /**
+     * Таймер элемента: узел списка ячейки, в которой элемент находится.
+     *
+     * @param <T> тип элемента
+     */
+    public static final class Timer<T> {
+        private final T item;
+        private final long deadlineTick;
+        private Timer<T> prev;
+        private Timer<T> next;
+        private int level = -1;
+        private int slot;
+
+        private Timer(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
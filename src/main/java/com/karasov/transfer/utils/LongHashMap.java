@@ -0,0 +1,163 @@
+package com.karasov.transfer.utils;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Хэш-таблица с открытой адресацией и примитивными ключами типа {@code long}.
+ * <p>
+ * Ключи и значения хранятся в параллельных массивах, коллизии разрешаются линейным
+ * пробированием. Поиск не упаковывает ключ в {@link Long} и не создает объектов.
+ * Значение {@code null} не допускается: пустой слот определяется по отсутствию значения.
+ * <p>
+ * Класс не потокобезопасен. Безопасное чтение из нескольких потоков возможно только
+ * после завершения заполнения и безопасной публикации экземпляра.
+ *
+ * @param <V> тип значений
+ */
+public class LongHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int shift;
+    private int size;
+    private int threshold;
+
+    /**
+     * Создает таблицу, рассчитанную на указанное количество элементов без расширения.
+     *
+     * @param expectedSize ожидаемое количество элементов
+     */
+    public LongHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Создает таблицу минимального размера.
+     */
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Получает значение по ключу.
+     *
+     * @param key ключ для поиска
+     * @return значение, если ключ найден; {@code null} в противном случае
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        for (int i = slot(key, shift); ; i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * Добавляет значение по ключу или заменяет существующее.
+     *
+     * @param key   ключ
+     * @param value значение, не {@code null}
+     * @return предыдущее значение по ключу или {@code null}, если его не было
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        for (int i = slot(key, shift); ; i = (i + 1) & mask) {
+            Object current = values[i];
+            if (current == null) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > threshold) {
+                    resize();
+                }
+                return null;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return (V) current;
+            }
+        }
+    }
+
+    /**
+     * Передает обработчику все элементы таблицы в порядке слотов.
+     *
+     * @param action обработчик, получающий значение и ключ
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<? super V> action) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.accept((V) values[i], keys[i]);
+            }
+        }
+    }
+
+    /**
+     * @return количество элементов в таблице
+     */
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int j = 0; j < oldValues.length; j++) {
+            Object value = oldValues[j];
+            if (value != null) {
+                int i = slot(oldKeys[j], shift);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Вычисляет емкость (степень двойки), достаточную для хранения элементов без расширения.
+     */
+    static int capacityFor(int expectedSize) {
+        long required = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR) + 1;
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(required - 1) << 1);
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Too many elements: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * Фибоначчиево хэширование: старшие биты произведения хорошо перемешаны
+     * даже для последовательных номеров карт.
+     */
+    static int slot(long key, int shift) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
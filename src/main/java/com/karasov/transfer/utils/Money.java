@@ -0,0 +1,76 @@
+package com.karasov.transfer.utils;
+
+/**
+ * Утилитарный класс для денежных сумм в примитивном представлении.
+ * <p>
+ * Сумма хранится как {@code long} в копейках: операции с ней точны, не создают объектов
+ * и позволяют хранить балансы в примитивных массивах и изменять их атомарными операциями
+ * над {@code long}. Переполнение при сложении и вычислении комиссии приводит к
+ * {@link ArithmeticException}, а не к искажению суммы.
+ */
+public class Money {
+
+    /**
+     * Количество копеек в рубле.
+     */
+    public static final long KOPECKS_PER_ROUBLE = 100;
+
+    /**
+     * Комиссия за перевод в сотых долях процента (1% = 100).
+     */
+    public static final long COMMISSION_BASIS_POINTS = 100;
+
+    /**
+     * Значение, возвращаемое при невозможности представить сумму в копейках.
+     */
+    public static final long INVALID = -1L;
+
+    private static final long BASIS_POINTS = 10_000;
+
+    /**
+     * Преобразует сумму в копейках, полученную в JSON-числе, в {@code long}.
+     *
+     * @param kopecks сумма в копейках
+     * @return сумма или {@link #INVALID}, если значение дробное, отрицательное или не помещается в {@code long}
+     */
+    public static long ofKopecks(double kopecks) {
+        if (!(kopecks >= 0 && kopecks < 0x1p63) || kopecks != Math.rint(kopecks)) {
+            return INVALID;
+        }
+        return (long) kopecks;
+    }
+
+    /**
+     * Вычисляет комиссию за перевод с округлением до копейки (половина копейки округляется вверх).
+     *
+     * @param amount сумма перевода в копейках, неотрицательная
+     * @return комиссия в копейках
+     * @throws ArithmeticException при переполнении
+     */
+    public static long commission(long amount) {
+        return Math.addExact(Math.multiplyExact(amount, COMMISSION_BASIS_POINTS), BASIS_POINTS / 2) / BASIS_POINTS;
+    }
+
+    /**
+     * @param amount сумма перевода в копейках, неотрицательная
+     * @return сумма списания с учетом комиссии в копейках
+     * @throws ArithmeticException при переполнении
+     */
+    public static long withCommission(long amount) {
+        return Math.addExact(amount, commission(amount));
+    }
+
+    /**
+     * Форматирует сумму в рублях с двумя знаками после точки, например {@code 1234.05}.
+     * Предназначен для сообщений и логов.
+     *
+     * @param kopecks сумма в копейках
+     * @return строковое представление суммы
+     */
+    public static String format(long kopecks) {
+        long roubles = kopecks / KOPECKS_PER_ROUBLE;
+        long rest = Math.abs(kopecks % KOPECKS_PER_ROUBLE);
+        String sign = kopecks < 0 && roubles == 0 ? "-" : "";
+        return sign + roubles + (rest < 10 ? ".0" : ".") + rest;
+    }
+}
@@ -2,6 +2,7 @@ package com.karasov.transfer.utils;
 
 import com.karasov.transfer.dto.RequestDto;
 import com.karasov.transfer.models.Card;
+import com.karasov.transfer.models.Currency;
 import com.karasov.transfer.models.Request;
 
 /**
@@ -16,18 +17,52 @@ public class RequestMapper {
      * @param requestDto объект запроса, содержащий данные для перевода.
      * @return {@link Request} объект, содержащий информацию о переводе, включая
      *         карту, с которой совершается перевод, номер карты получателя,
-     *         сумму перевода и валюту.
+     *         сумму перевода в сотых долях валюты и валюту. Дробная или отрицательная сумма
+     *         преобразуется в {@link Money#INVALID}, неизвестный код валюты — в {@code null};
+     *         такие запросы отклоняются валидацией.
      */
     public static Request requestDtoToRequest(RequestDto requestDto) {
         return new Request(
                 new Card(
                         requestDto.cardFromNumber(),
-                        requestDto.cardFromValidTill().replaceAll("[^\\d]", ""),
+                        digitsOnly(requestDto.cardFromValidTill()),
                         requestDto.cardFromCVV()
                 ),
                 requestDto.cardToNumber(),
-                requestDto.amount().value() / 100,
-                requestDto.amount().currency()
+                Money.ofKopecks(requestDto.amount().value()),
+                Currency.of(requestDto.amount().currency())
         );
     }
+
+    /**
+     * Удаляет из строки все символы, кроме цифр (например, разделитель в дате "12/31").
+     * Если строка уже состоит только из цифр, возвращается она сама без создания новой строки.
+     *
+     * @param value исходная строка.
+     * @return строка, содержащая только цифры исходной строки.
+     */
+    static String digitsOnly(String value) {
+        if (value == null) {
+            return null;
+        }
+        int length = value.length();
+        int digits = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            }
+        }
+        if (digits == length) {
+            return value;
+        }
+        char[] result = new char[digits];
+        for (int i = 0, j = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                result[j++] = c;
+            }
+        }
+        return new String(result);
+    }
 }
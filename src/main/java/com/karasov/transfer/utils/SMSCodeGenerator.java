@@ -1,18 +1,52 @@
 package com.karasov.transfer.utils;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
 /**
  * Класс генератора SMS-кодов для верификации.
- * Предоставляет метод для генерации верификационного кода.
+ * Предоставляет методы для генерации верификационного кода и его проверки.
  */
 public class SMSCodeGenerator {
 
+    /**
+     * Количество цифр верификационного кода.
+     */
+    public static final int CODE_LENGTH = 6;
+
+    private static final int CODE_BOUND = 1_000_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     /**
      * Генерирует верификационный SMS-код.
      *
-     * @return строка, представляющая верификационный код.
-     *         В данной реализации всегда возвращается "0000".
+     * @return строка из {@value #CODE_LENGTH} случайных цифр, полученных из {@link SecureRandom}.
      */
     public static String generateVerificationSMSCode() {
-        return "0000";
+        int code = RANDOM.nextInt(CODE_BOUND);
+        char[] digits = new char[CODE_LENGTH];
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Сравнивает введенный код с ожидаемым за время, не зависящее от позиции первого несовпадения,
+     * чтобы код нельзя было подобрать по времени ответа.
+     *
+     * @param expected выданный код
+     * @param actual   введенный код, может быть {@code null}
+     * @return {@code true}, если коды совпадают
+     */
+    public static boolean matches(String expected, String actual) {
+        if (actual == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.US_ASCII),
+                actual.getBytes(StandardCharsets.US_ASCII));
     }
 }
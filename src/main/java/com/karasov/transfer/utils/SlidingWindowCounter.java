@@ -0,0 +1,145 @@
+package com.karasov.transfer.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Неблокирующий счетчик количества и суммы событий в скользящем окне времени.
+ * <p>
+ * Окно разбито на кольцо корзин одинаковой ширины. Каждая корзина хранит номер своего интервала
+ * времени и одно упакованное значение: количество событий в старших {@value #COUNT_BITS} битах
+ * и сумму в младших {@value #AMOUNT_BITS} битах, поэтому количество и сумма изменяются одной
+ * атомарной операцией {@code getAndAdd}. Устаревшая корзина заменяется новой через CAS
+ * в {@link AtomicReferenceArray}, без блокировок.
+ * <p>
+ * Проверка предела выполняется оптимистично: событие сначала добавляется, затем суммируются
+ * корзины окна, и при превышении предела добавление откатывается. Поэтому конкурентные события
+ * не могут вместе превысить предел, хотя вблизи предела одно из них может быть отклонено лишним.
+ * Окно учитывает корзины, интервал которых отстоит от текущего меньше чем на количество корзин,
+ * то есть его длина колеблется между {@code (buckets - 1) * width} и {@code buckets * width}.
+ * Параметры ширины корзины и пределов передаются при вызове и общие для всех счетчиков.
+ */
+public final class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 16;
+    private static final int AMOUNT_BITS = 64 - COUNT_BITS;
+
+    /**
+     * Максимальная сумма одного события.
+     */
+    public static final long MAX_AMOUNT = (1L << AMOUNT_BITS) - 1;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+    private volatile long lastInterval;
+
+    /**
+     * @param bucketCount количество корзин в окне
+     */
+    public SlidingWindowCounter(int bucketCount) {
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+    }
+
+    /**
+     * Добавляет событие, если после добавления количество и сумма событий в окне не превысят пределы.
+     *
+     * @param now         текущее время по {@link System#nanoTime()}
+     * @param amount      сумма события, от 0 до {@link #MAX_AMOUNT}
+     * @param bucketWidth ширина корзины, нс
+     * @param maxCount    предел количества событий в окне
+     * @param maxAmount   предел суммы событий в окне
+     * @return {@code true}, если событие добавлено
+     */
+    public boolean tryAdd(long now, long amount, long bucketWidth, long maxCount, long maxAmount) {
+        if (amount < 0 || amount > MAX_AMOUNT) {
+            return false;
+        }
+        long interval = Math.floorDiv(now, bucketWidth);
+        Bucket bucket = bucket(interval);
+        long delta = (1L << AMOUNT_BITS) | amount;
+        bucket.add(delta);
+        long count = 0;
+        long sum = 0;
+        int length = buckets.length();
+        for (int i = 0; i < length; i++) {
+            Bucket other = buckets.get(i);
+            if (other != null && interval - other.interval < length && interval - other.interval >= 0) {
+                long packed = other.packed;
+                count += packed >>> AMOUNT_BITS;
+                sum += packed & MAX_AMOUNT;
+            }
+        }
+        if (count > maxCount || sum > maxAmount) {
+            bucket.add(-delta);
+            return false;
+        }
+        lastInterval = interval;
+        return true;
+    }
+
+    /**
+     * Откатывает событие, добавленное в момент {@code addedAt}. Если корзина этого момента
+     * уже вышла из окна, откатывать нечего.
+     *
+     * @param addedAt     время, переданное в {@link #tryAdd}
+     * @param amount      сумма события
+     * @param bucketWidth ширина корзины, нс
+     */
+    public void remove(long addedAt, long amount, long bucketWidth) {
+        long interval = Math.floorDiv(addedAt, bucketWidth);
+        Bucket bucket = buckets.get((int) Math.floorMod(interval, (long) buckets.length()));
+        if (bucket != null && bucket.interval == interval) {
+            bucket.add(-((1L << AMOUNT_BITS) | amount));
+        }
+    }
+
+    /**
+     * @param now         текущее время по {@link System#nanoTime()}
+     * @param bucketWidth ширина корзины, нс
+     * @return {@code true}, если все события вышли из окна и счетчик можно удалить
+     */
+    public boolean isIdle(long now, long bucketWidth) {
+        return Math.floorDiv(now, bucketWidth) - lastInterval >= buckets.length();
+    }
+
+    private Bucket bucket(long interval) {
+        int slot = (int) Math.floorMod(interval, (long) buckets.length());
+        for (; ; ) {
+            Bucket current = buckets.get(slot);
+            if (current != null && current.interval == interval) {
+                return current;
+            }
+            if (current != null && current.interval > interval) {
+                // Поток отстал от других на целое окно: событие учитывается вне окна.
+                return new Bucket(interval);
+            }
+            Bucket fresh = new Bucket(interval);
+            if (buckets.compareAndSet(slot, current, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private static final VarHandle PACKED;
+
+        static {
+            try {
+                PACKED = MethodHandles.lookup().findVarHandle(Bucket.class, "packed", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final long interval;
+        private volatile long packed;
+
+        private Bucket(long interval) {
+            this.interval = interval;
+        }
+
+        private void add(long delta) {
+            PACKED.getAndAdd(this, delta);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.karasov.transfer.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Неблокирующий ограничитель частоты по алгоритму GCRA (generic cell rate algorithm),
+ * эквивалентному корзине токенов.
+ * <p>
+ * Вместо количества токенов и времени пополнения хранится одно число — теоретическое время
+ * прихода следующего запроса, которое сдвигается на интервал между запросами при каждом
+ * разрешенном запросе. Поэтому состояние обновляется одной операцией CAS, без блокировок,
+ * а корзина занимает один объект с одним полем. Параметры частоты передаются при вызове
+ * и общие для всех корзин.
+ */
+public final class TokenBucket {
+
+    private static final VarHandle THEORETICAL_ARRIVAL;
+
+    static {
+        try {
+            THEORETICAL_ARRIVAL = MethodHandles.lookup()
+                    .findVarHandle(TokenBucket.class, "theoreticalArrival", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long theoreticalArrival;
+
+    /**
+     * Создает полную корзину.
+     *
+     * @param now текущее время по {@link System#nanoTime()}
+     */
+    public TokenBucket(long now) {
+        this.theoreticalArrival = now;
+    }
+
+    /**
+     * Забирает токен, если он есть.
+     *
+     * @param now              текущее время по {@link System#nanoTime()}
+     * @param emissionInterval интервал пополнения одного токена, нс
+     * @param burstTolerance   емкость корзины, выраженная во времени: {@code emissionInterval * burst}
+     * @return {@code true}, если токен получен
+     */
+    public boolean tryAcquire(long now, long emissionInterval, long burstTolerance) {
+        for (; ; ) {
+            long current = theoreticalArrival;
+            long next = (current - now > 0 ? current : now) + emissionInterval;
+            if (next - now > burstTolerance) {
+                return false;
+            }
+            if (THEORETICAL_ARRIVAL.compareAndSet(this, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param now текущее время по {@link System#nanoTime()}
+     * @return {@code true}, если корзина полностью пополнена и ее можно удалить без изменения поведения
+     */
+    public boolean isFull(long now) {
+        return theoreticalArrival - now <= 0;
+    }
+}
@@ -0,0 +1,34 @@
+package com.karasov.transfer.utils;
+
+/**
+ * Результат проверки запроса на перевод: признак успешной проверки или поле, не прошедшее проверку.
+ */
+public enum ValidationResult {
+    VALID(null),
+    CARD_FROM_NUMBER("cardFromNumber"),
+    CARD_TO_NUMBER("cardToNumber"),
+    CARD_FROM_VALID_TILL("cardFromValidTill"),
+    CARD_FROM_CVV("cardFromCVV"),
+    AMOUNT_VALUE("amount.value"),
+    AMOUNT_CURRENCY("amount.currency");
+
+    private final String field;
+
+    ValidationResult(String field) {
+        this.field = field;
+    }
+
+    /**
+     * @return имя поля запроса, не прошедшего проверку, или {@code null} для {@link #VALID}
+     */
+    public String field() {
+        return field;
+    }
+
+    /**
+     * @return {@code true}, если проверка пройдена
+     */
+    public boolean isValid() {
+        return this == VALID;
+    }
+}
@@ -1,15 +1,57 @@
 package com.karasov.transfer.utils;
 
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.models.Currency;
+import com.karasov.transfer.models.Request;
 import com.karasov.transfer.service.TransferService;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Утилитарный касс валидации данных, обрабатываемых в классе {@link TransferService}
+ * <p>
+ * Все проверки выполняются за один проход по символам строки, без регулярных выражений
+ * и без выделения памяти. Текущий месяц для проверки срока действия карты кэшируется
+ * и обновляется не чаще одного раза в минуту.
  */
 public class Validator {
 
+    private static final long CURRENT_MONTH_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static volatile int currentMonth = monthIndex(YearMonth.now());
+    private static volatile long currentMonthRefreshAt = System.currentTimeMillis() + CURRENT_MONTH_REFRESH_MILLIS;
+
+    /**
+     * Проверяет все поля запроса на перевод.
+     *
+     * @param request   запрос на перевод.
+     * @param luhnCheck проверять ли контрольную сумму номеров карт по алгоритму Луна.
+     * @return {@link ValidationResult#VALID} или первое поле, не прошедшее проверку.
+     */
+    public static ValidationResult validate(Request request, boolean luhnCheck) {
+        Card cardFrom = request.getCardFrom();
+        if (!validateCardNumber(cardFrom.getCardNumber(), luhnCheck)) {
+            return ValidationResult.CARD_FROM_NUMBER;
+        }
+        if (!validateCardNumber(request.getCardToNumber(), luhnCheck)) {
+            return ValidationResult.CARD_TO_NUMBER;
+        }
+        if (!validateExpireDate(cardFrom.getValidTill())) {
+            return ValidationResult.CARD_FROM_VALID_TILL;
+        }
+        if (!validateCVV(cardFrom.getCvv())) {
+            return ValidationResult.CARD_FROM_CVV;
+        }
+        if (!validatePaymentValue(request.getPayment().getPaymentValue())) {
+            return ValidationResult.AMOUNT_VALUE;
+        }
+        if (!validatePaymentCurrency(request.getPayment().getCurrency())) {
+            return ValidationResult.AMOUNT_CURRENCY;
+        }
+        return ValidationResult.VALID;
+    }
+
     /**
      * Осуществляет проверку номера карты.
      * Условие проверки: номер должен состоять из 16 цифр
@@ -18,7 +60,38 @@ public class Validator {
      * @return true, если условие проверки соблюдается, иначе false.
      */
     public static boolean validateCardNumber(String cardNumber) {
-        return cardNumber.matches("^[0-9]{16}$");
+        return validateCardNumber(cardNumber, false);
+    }
+
+    /**
+     * Осуществляет проверку номера карты.
+     * Условия проверки:
+     * 1) номер должен состоять из 16 цифр
+     * 2) если включена проверка Луна, контрольная сумма номера должна быть кратна 10
+     *
+     * @param cardNumber номер карты в формате String.
+     * @param luhnCheck  проверять ли контрольную сумму по алгоритму Луна.
+     * @return true, если условие проверки соблюдается, иначе false.
+     */
+    public static boolean validateCardNumber(String cardNumber, boolean luhnCheck) {
+        if (cardNumber == null || cardNumber.length() != CardNumbers.LENGTH) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < CardNumbers.LENGTH; i++) {
+            int digit = cardNumber.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            if ((i & 1) == 0) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return !luhnCheck || sum % 10 == 0;
     }
 
     /**
@@ -31,12 +104,15 @@ public class Validator {
      * @return true, если условие проверки соблюдается, иначе false.
      */
     public static boolean validateExpireDate(String validTill) {
-        if (!validTill.matches("^(0[1-9]|1[0-2])\\d{2}$")) {
+        if (validTill == null || validTill.length() != 4 || !isDigits(validTill)) {
+            return false;
+        }
+        int month = (validTill.charAt(0) - '0') * 10 + (validTill.charAt(1) - '0');
+        int year = 2000 + (validTill.charAt(2) - '0') * 10 + (validTill.charAt(3) - '0');
+        if (month < 1 || month > 12) {
             return false;
         }
-        int month = Integer.parseInt(validTill.substring(0, 2));
-        int year = 2000 + Integer.parseInt(validTill.substring(2, 4));
-        return LocalDateTime.now().isBefore(LocalDate.of(year, month, 1).atStartOfDay());
+        return year * 12 + month - 1 > currentMonth();
     }
 
     /**
@@ -47,28 +123,55 @@ public class Validator {
      * @return true, если условие проверки соблюдается, иначе false.
      */
     public static boolean validateCVV(String cvv) {
-        return cvv.matches("^[0-9]{3}$");
+        return cvv != null && cvv.length() == 3 && isDigits(cvv);
     }
 
     /**
      * Осуществляет проверку переводимой суммы.
      * Условие проверки: сумма не может быть меньше или равна 0.
      *
-     * @param value int переводимая сумма.
+     * @param value long переводимая сумма в копейках.
      * @return true, если условие проверки соблюдается, иначе false.
      */
-    public static boolean validatePaymentValue(double value) {
-        return value > 0.0;
+    public static boolean validatePaymentValue(long value) {
+        return value > 0;
     }
 
     /**
      * Осуществляет проверку валюты.
-     * Условие проверки: значение валюты равно "RUB".
+     * Условие проверки: код валюты распознан при преобразовании запроса ({@link Currency#of(String)}).
+     * Наличие курса валюты проверяется при регистрации перевода.
      *
-     * @param currency String значение валюты.
+     * @param currency валюта перевода.
      * @return true, если условие проверки соблюдается, иначе false.
      */
-    public static boolean validatePaymentCurrency(String currency) {
-        return currency.equals("RUR");
+    public static boolean validatePaymentCurrency(Currency currency) {
+        return currency != null;
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает номер текущего месяца ({@code год * 12 + месяц - 1}), обновляя его раз в минуту.
+     */
+    private static int currentMonth() {
+        long now = System.currentTimeMillis();
+        if (now >= currentMonthRefreshAt) {
+            currentMonth = monthIndex(YearMonth.now());
+            currentMonthRefreshAt = now + CURRENT_MONTH_REFRESH_MILLIS;
+        }
+        return currentMonth;
+    }
+
+    private static int monthIndex(YearMonth yearMonth) {
+        return yearMonth.getYear() * 12 + yearMonth.getMonthValue() - 1;
     }
 }
@@ -0,0 +1,20 @@
+package com.karasov.transfer.dto;
+
+import com.karasov.transfer.utils.Money;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferStatusTest {
+
+    @Test
+    void invalidInputMessageOmitsUnparsedAmount() {
+        RegisterStatusDto unparsed = new RegisterStatusDto(TransferStatus.INVALID_INPUT, "1",
+                "1111111111111111", "2222222222222222", Money.INVALID, 0L, "amount.value");
+        RegisterStatusDto parsed = new RegisterStatusDto(TransferStatus.INVALID_INPUT, "1",
+                "1111111111111111", "2222222222222222", 10_050L, 0L, "cardFromCVV");
+
+        assertThat(unparsed.statusMessage()).doesNotContain("amount:").doesNotContain("-");
+        assertThat(parsed.statusMessage()).contains("amount: " + Money.format(10_050L));
+    }
+}
@@ -0,0 +1,84 @@
+package com.karasov.transfer.models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardTest {
+
+    @Test
+    void holdsOnlyAvailableBalance() {
+        Card card = new Card("1111111111111111", "1231", "111", 10_000L);
+
+        assertThat(card.hold(7_000L)).isTrue();
+        assertThat(card.hold(7_000L)).isFalse();
+        assertThat(card.withdrawMoney(3_001L)).isFalse();
+        assertThat(card.getBalance()).isEqualTo(3_000L);
+        assertThat(card.getHeld()).isEqualTo(7_000L);
+    }
+
+    @Test
+    void capturesOrReleasesHeldAmount() {
+        Card card = new Card("1111111111111111", "1231", "111", 10_000L);
+        card.hold(4_000L);
+        card.hold(1_000L);
+
+        card.captureHold(4_000L);
+        card.releaseHold(1_000L);
+
+        assertThat(card.getBalance()).isEqualTo(6_000L);
+        assertThat(card.getHeld()).isZero();
+    }
+
+    @Test
+    void foldsStripedCreditsBeforeDebit() throws InterruptedException {
+        Card card = new Card("1111111111111111", "1231", "111", 0L);
+        card.stripeCredits();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    card.refillBalance(1L);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(card.hasStripedCredits()).isTrue();
+        assertThat(card.withdrawMoney(40_001L)).isFalse();
+        assertThat(card.withdrawMoney(40_000L)).isTrue();
+        assertThat(card.getBalance()).isZero();
+    }
+
+    @Test
+    void keepsEveryCreditWhileSwitchingModes() throws InterruptedException {
+        Card card = new Card("1111111111111111", "1231", "111", 0L);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    card.refillBalance(1L);
+                }
+            });
+            threads[i].start();
+        }
+        Thread reader = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                card.getBalance();
+            }
+        });
+        reader.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        reader.interrupt();
+        reader.join();
+
+        assertThat(card.getBalance()).isEqualTo(800_000L);
+    }
+}
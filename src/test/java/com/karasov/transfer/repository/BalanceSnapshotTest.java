@@ -0,0 +1,40 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.repository.TransferJournal.RecordType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceSnapshotTest {
+
+    private static final long FIRST = 1111111111111111L;
+    private static final long SECOND = 2222222222222222L;
+    private static final long THIRD = 3333333333333333L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresBalancesAndOpenDebitsFromWrittenSnapshot() throws Exception {
+        BalanceSnapshot snapshot = BalanceSnapshot.loadLatest(directory);
+        snapshot.fold(RecordType.TRANSFER, 1, FIRST, SECOND, 10_000);
+        snapshot.fold(RecordType.DEBIT, 2, SECOND, THIRD, 5_000);
+        snapshot.fold(RecordType.CREDIT, 2, SECOND, THIRD, 5_000);
+        snapshot.fold(RecordType.DEBIT, 3, THIRD, FIRST, 2_500);
+        snapshot.nextSegment(7);
+        snapshot.write(directory);
+
+        BalanceSnapshot loaded = BalanceSnapshot.loadLatest(directory);
+        CardRepositoryImpl cards = new CardRepositoryImpl();
+        loaded.applyTo(cards);
+
+        assertThat(loaded.nextSegment()).isEqualTo(7);
+        assertThat(loaded.openDebits()).containsExactly(new BalanceSnapshot.Debit(3, THIRD, FIRST, 2_500));
+        assertThat(cards.getCardByNumber(FIRST).getBalance()).isEqualTo(90_000L);
+        assertThat(cards.getCardByNumber(SECOND).getBalance()).isEqualTo(205_000L);
+        assertThat(cards.getCardByNumber(THIRD).getBalance()).isEqualTo(302_500L);
+    }
+}
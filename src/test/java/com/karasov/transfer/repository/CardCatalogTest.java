@@ -0,0 +1,54 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.models.Card;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardCatalogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsValidRecordsAndMaterializesCardOnce() throws Exception {
+        ByteBuffer records = ByteBuffer.allocate(3 * CardCatalog.RECORD_SIZE);
+        records.putLong(4000000000000001L).putLong(150_050).putInt(130).putInt(7);
+        records.putLong(10_000_000_000_000_000L).putLong(100).putInt(1230).putInt(123);
+        records.putLong(4000000000000002L).putLong(0).putInt(1231).putInt(999);
+        Path file = directory.resolve("cards.bin");
+        Files.write(file, records.array());
+
+        CardCatalog catalog = CardCatalog.load(file, 2);
+
+        assertThat(catalog.size()).isEqualTo(2);
+        Card card = catalog.get(4000000000000001L);
+        assertThat(card.getCardNumber()).isEqualTo("4000000000000001");
+        assertThat(card.getValidTill()).isEqualTo("0130");
+        assertThat(card.getCvv()).isEqualTo("007");
+        assertThat(card.getBalance()).isEqualTo(150_050L);
+        assertThat(catalog.get(4000000000000001L)).isSameAs(card);
+        assertThat(catalog.get(10_000_000_000_000_000L)).isNull();
+    }
+
+    @Test
+    void keepsLeadingZerosOfCardNumbers() throws Exception {
+        ByteBuffer records = ByteBuffer.allocate(2 * CardCatalog.RECORD_SIZE);
+        records.putLong(12345678901234L).putLong(500).putInt(1230).putInt(123);
+        records.putLong(0).putLong(700).putInt(1231).putInt(456);
+        Path file = directory.resolve("cards.bin");
+        Files.write(file, records.array());
+
+        CardCatalog catalog = CardCatalog.load(file, 1);
+
+        assertThat(catalog.size()).isEqualTo(2);
+        assertThat(catalog.get(12345678901234L).getCardNumber()).isEqualTo("0012345678901234");
+        assertThat(catalog.get(0).getCardNumber()).isEqualTo("0000000000000000");
+        assertThat(catalog.get(0).getBalance()).isEqualTo(700L);
+    }
+}
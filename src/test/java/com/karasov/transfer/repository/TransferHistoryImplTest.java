@@ -0,0 +1,101 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.dto.TransferStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferHistoryImplTest {
+
+    private static final long CARD = 1111_2222_3333_4444L;
+    private static final long OTHER = 5555_6666_7777_8888L;
+
+    @Test
+    void readsCardOperationsNewestFirstWithCursor() {
+        TransferHistoryImpl history = new TransferHistoryImpl(1_000, 1);
+        history.record(1, CARD, OTHER, 100, 1, TransferStatus.CONFIRMED);
+        history.record(2, 42L, 43L, 200, 1, TransferStatus.CONFIRMED);
+        history.record(3, OTHER, CARD, 300, 1, TransferStatus.CONFIRMED);
+        history.record(4, CARD, OTHER, 400, 0, TransferStatus.VELOCITY_LIMIT_EXCEEDED);
+
+        TransferHistory.Cursor page = history.history(CARD, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE);
+        assertThat(page.next()).isTrue();
+        assertThat(page.operationId()).isEqualTo(4);
+        assertThat(page.status()).isEqualTo(TransferStatus.VELOCITY_LIMIT_EXCEEDED);
+        assertThat(page.next()).isTrue();
+        assertThat(page.operationId()).isEqualTo(3);
+        assertThat(page.outgoing()).isFalse();
+        assertThat(page.counterparty()).isEqualTo(OTHER);
+        assertThat(page.amount()).isEqualTo(300);
+
+        assertThat(operationIds(history.history(CARD, Long.MIN_VALUE, Long.MAX_VALUE, page.position())))
+                .containsExactly(1L);
+        assertThat(operationIds(history.history(OTHER, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE)))
+                .containsExactly(4L, 3L, 1L);
+        assertThat(operationIds(history.history(7L, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE)))
+                .isEmpty();
+    }
+
+    @Test
+    void keepsCardHistoryAcrossShards() {
+        TransferHistoryImpl history = new TransferHistoryImpl(1_000, 4);
+        for (long card = 1; card <= 16; card++) {
+            history.record(card, CARD, card, 100, 2, TransferStatus.CONFIRMED);
+        }
+
+        TransferHistory.Cursor page = history.history(CARD, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE);
+        assertThat(page.next()).isTrue();
+        assertThat(page.commission()).isEqualTo(2);
+        assertThat(operationIds(history.history(CARD, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE)))
+                .containsExactly(16L, 15L, 14L, 13L, 12L, 11L, 10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L);
+        for (long card = 1; card <= 16; card++) {
+            TransferHistory.Cursor incoming = history.history(card, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE);
+            assertThat(incoming.next()).isTrue();
+            assertThat(incoming.outgoing()).isFalse();
+            assertThat(incoming.counterparty()).isEqualTo(CARD);
+            assertThat(incoming.next()).isFalse();
+        }
+    }
+
+    @Test
+    void filtersByTimeRange() {
+        TransferHistoryImpl history = new TransferHistoryImpl(1_000, 1);
+        history.record(1, CARD, OTHER, 100, 1, TransferStatus.CONFIRMED);
+        TransferHistory.Cursor first = history.history(CARD, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE);
+        first.next();
+        long recordedAt = first.timestamp();
+
+        assertThat(operationIds(history.history(CARD, recordedAt, recordedAt + 1, TransferHistory.FIRST_PAGE)))
+                .containsExactly(1L);
+        assertThat(operationIds(history.history(CARD, recordedAt + 1, Long.MAX_VALUE, TransferHistory.FIRST_PAGE)))
+                .isEmpty();
+        assertThat(operationIds(history.history(CARD, Long.MIN_VALUE, recordedAt, TransferHistory.FIRST_PAGE)))
+                .isEmpty();
+    }
+
+    @Test
+    void stopsAtEvictedOperations() {
+        TransferHistoryImpl history = new TransferHistoryImpl(100_000, 1);
+        int total = 300_000;
+        for (int i = 0; i < total; i++) {
+            history.record(i, CARD, OTHER, i, 1, TransferStatus.CONFIRMED);
+        }
+
+        List<Long> retained = operationIds(history.history(CARD, Long.MIN_VALUE, Long.MAX_VALUE, TransferHistory.FIRST_PAGE));
+        assertThat(retained).hasSizeGreaterThanOrEqualTo(100_000).hasSizeLessThan(total);
+        assertThat(retained.get(0)).isEqualTo(total - 1);
+        assertThat(retained.get(retained.size() - 1)).isEqualTo(total - retained.size());
+        assertThat(operationIds(history.history(CARD, Long.MIN_VALUE, Long.MAX_VALUE, 10))).isEmpty();
+    }
+
+    private static List<Long> operationIds(TransferHistory.Cursor cursor) {
+        List<Long> ids = new ArrayList<>();
+        while (cursor.next()) {
+            ids.add(cursor.operationId());
+        }
+        return ids;
+    }
+}
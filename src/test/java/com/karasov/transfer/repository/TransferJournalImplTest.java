@@ -0,0 +1,96 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.repository.TransferJournal.RecordType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransferJournalImplTest {
+
+    private static final long FIRST = 1111111111111111L;
+    private static final long SECOND = 2222222222222222L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void stopsReplayAtFirstTornRecordAcrossSegments() throws Exception {
+        TransferJournalImpl journal = open(new CardRepositoryImpl());
+        for (int id = 1; id <= 5; id++) {
+            journal.append(RecordType.TRANSFER, id, FIRST, SECOND, 1_000).join();
+        }
+        journal.close();
+        try (FileChannel second = FileChannel.open(directory.resolve(String.format("%019d.journal", 1)),
+                StandardOpenOption.WRITE)) {
+            second.write(ByteBuffer.wrap(new byte[]{1}), 12);
+        }
+
+        CardRepositoryImpl cards = new CardRepositoryImpl();
+        open(cards).close();
+
+        assertThat(cards.getCardByNumber(FIRST).getBalance()).isEqualTo(98_000L);
+        assertThat(cards.getCardByNumber(SECOND).getBalance()).isEqualTo(202_000L);
+        assertThat(directory.resolve(String.format("%019d.journal", 2))).doesNotExist();
+        assertThat(directory.resolve(String.format("%019d.journal.discarded", 2))).exists();
+        assertThat(Files.readAllBytes(directory.resolve(String.format("%019d.journal", 1)))).containsOnly(0);
+    }
+
+    @Test
+    void erasesRecordsWhoseForceFailedAndKeepsJournaling() throws Exception {
+        AtomicInteger failingForces = new AtomicInteger(1);
+        TransferJournalImpl journal = new TransferJournalImpl(new CardRepositoryImpl(), directory,
+                DataSize.ofBytes(2 * TransferJournalImpl.RECORD_SIZE), 16, Duration.ZERO) {
+            @Override
+            void force(int from, int length) {
+                if (failingForces.getAndDecrement() > 0) {
+                    throw new UncheckedIOException(new IOException("Injected force failure"));
+                }
+                super.force(from, length);
+            }
+        };
+        assertThatThrownBy(() -> journal.append(RecordType.TRANSFER, 1, FIRST, SECOND, 1_000).join())
+                .hasCauseInstanceOf(UncheckedIOException.class);
+        journal.append(RecordType.TRANSFER, 2, FIRST, SECOND, 2_000).join();
+        journal.close();
+
+        CardRepositoryImpl cards = new CardRepositoryImpl();
+        open(cards).close();
+
+        assertThat(cards.getCardByNumber(FIRST).getBalance()).isEqualTo(98_000L);
+        assertThat(cards.getCardByNumber(SECOND).getBalance()).isEqualTo(202_000L);
+    }
+
+    @Test
+    void stopsAcceptingRecordsWhenFailedRecordCannotBeErased() throws Exception {
+        TransferJournalImpl journal = new TransferJournalImpl(new CardRepositoryImpl(), directory,
+                DataSize.ofBytes(2 * TransferJournalImpl.RECORD_SIZE), 16, Duration.ZERO) {
+            @Override
+            void force(int from, int length) {
+                throw new UncheckedIOException(new IOException("Injected force failure"));
+            }
+        };
+        assertThatThrownBy(() -> journal.append(RecordType.TRANSFER, 1, FIRST, SECOND, 1_000).join())
+                .hasCauseInstanceOf(TransferJournal.UncertainCommitException.class);
+        assertThatThrownBy(() -> journal.append(RecordType.TRANSFER, 2, FIRST, SECOND, 1_000).join())
+                .hasMessageContaining("Transfer journal has failed");
+        journal.close();
+    }
+
+    private TransferJournalImpl open(CardRepository cards) {
+        return new TransferJournalImpl(cards, directory,
+                DataSize.ofBytes(2 * TransferJournalImpl.RECORD_SIZE), 16, Duration.ZERO);
+    }
+}
@@ -0,0 +1,41 @@
+package com.karasov.transfer.repository;
+
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.models.Currency;
+import com.karasov.transfer.models.Request;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferRepositoryImplTest {
+
+    @Test
+    void cancelsExpirationTimersOfRemovedRequests() {
+        TransferRepositoryImpl repository = new TransferRepositoryImpl(Duration.ofMinutes(5), 100, 100);
+        Request confirmed = request(1);
+        Request pending = request(2);
+        Request removedBeforeTick = request(3);
+        repository.addRequest(confirmed);
+        repository.addRequest(pending);
+        repository.expireRequests();
+        repository.addRequest(removedBeforeTick);
+
+        assertThat(repository.removeRequest(confirmed)).isTrue();
+        assertThat(repository.removeRequest(removedBeforeTick)).isTrue();
+        repository.expireRequests();
+
+        assertThat(repository.scheduledCount()).isEqualTo(1);
+        assertThat(repository.getStats().live()).isEqualTo(1);
+        assertThat(repository.getStats().removed()).isEqualTo(2);
+        assertThat(repository.getStats().expired()).isZero();
+    }
+
+    private static Request request(long id) {
+        Request request = new Request(new Card("1111111111111111", "12/39", "123"), "2222222222222222",
+                10_000L, Currency.RUR);
+        request.setId(id);
+        return request;
+    }
+}
@@ -0,0 +1,69 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.dto.RegisterStatusDto;
+import com.karasov.transfer.dto.RequestDto;
+import com.karasov.transfer.dto.TransferStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyCacheTest {
+
+    private static final RequestDto REQUEST = new RequestDto("1111111111111111", "12/39", "123",
+            "2222222222222222", new RequestDto.PaymentDto("RUR", 100.0));
+
+    private final IdempotencyCache cache = new IdempotencyCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    @Test
+    void registersOncePerKeyWithoutBlockingOtherKeys() throws Exception {
+        CountDownLatch registering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger registrations = new AtomicInteger();
+        CompletableFuture<IdempotencyCache.Entry> first = CompletableFuture.supplyAsync(() ->
+                cache.get("key", REQUEST, requestDto -> {
+                    registrations.incrementAndGet();
+                    registering.countDown();
+                    await(release);
+                    return RegisterStatusDto.of(TransferStatus.REGISTERED, "1");
+                }));
+        assertThat(registering.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<IdempotencyCache.Entry> second = CompletableFuture.supplyAsync(() ->
+                cache.get("key", REQUEST, requestDto -> {
+                    registrations.incrementAndGet();
+                    return RegisterStatusDto.of(TransferStatus.REGISTERED, "2");
+                }));
+
+        assertThat(cache.get("other", REQUEST, requestDto -> RegisterStatusDto.of(TransferStatus.REGISTERED, "3"))
+                .status().operationId()).isEqualTo("3");
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).status().operationId()).isEqualTo("1");
+        assertThat(second.get(5, TimeUnit.SECONDS).status().operationId()).isEqualTo("1");
+        assertThat(registrations).hasValue(1);
+    }
+
+    @Test
+    void doesNotKeepRetryableResults() {
+        cache.get("key", REQUEST, requestDto -> RegisterStatusDto.of(TransferStatus.NOT_ENOUGH_MONEY, "1"));
+
+        IdempotencyCache.Entry retried = cache.get("key", REQUEST,
+                requestDto -> RegisterStatusDto.of(TransferStatus.REGISTERED, "2"));
+
+        assertThat(retried.status().operationId()).isEqualTo("2");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
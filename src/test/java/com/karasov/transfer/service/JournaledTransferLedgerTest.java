@@ -0,0 +1,58 @@
+package com.karasov.transfer.service;
+
+import com.karasov.transfer.metrics.TransferMetrics;
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.repository.TransferJournal;
+import com.karasov.transfer.repository.TransferRepositoryImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JournaledTransferLedgerTest {
+
+    private final TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry(),
+            new TransferRepositoryImpl(Duration.ofMinutes(5), 100, 100));
+
+    @Test
+    void changesBalancesOnlyAfterJournalCommit() {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        TransferJournal journal = (type, operationId, cardFrom, cardTo, amount) -> durable;
+        Card from = new Card("1111111111111111", "1231", "111", 10_000L);
+        Card to = new Card("2222222222222222", "1231", "222", 0L);
+        from.hold(4_000L);
+
+        CompletableFuture<Boolean> captured = new JournaledTransferLedger(journal, metrics, Runnable::run)
+                .capture(1, from, 1111111111111111L, to, 2222222222222222L, 4_000L);
+        assertThat(from.getHeld()).isEqualTo(4_000L);
+        assertThat(to.getBalance()).isZero();
+
+        durable.complete(null);
+        assertThat(captured.join()).isTrue();
+        assertThat(from.getHeld()).isZero();
+        assertThat(from.getBalance()).isEqualTo(6_000L);
+        assertThat(to.getBalance()).isEqualTo(4_000L);
+    }
+
+    @Test
+    void keepsHoldWhenJournalCommitFails() {
+        TransferJournal journal = (type, operationId, cardFrom, cardTo, amount) ->
+                CompletableFuture.failedFuture(new IOException("disk full"));
+        Card from = new Card("1111111111111111", "1231", "111", 10_000L);
+        Card to = new Card("2222222222222222", "1231", "222", 0L);
+        from.hold(4_000L);
+
+        CompletableFuture<Boolean> captured = new JournaledTransferLedger(journal, metrics, Runnable::run)
+                .capture(1, from, 1111111111111111L, to, 2222222222222222L, 4_000L);
+
+        assertThatThrownBy(captured::join).hasCauseInstanceOf(IOException.class);
+        assertThat(from.getHeld()).isEqualTo(4_000L);
+        assertThat(from.getBalance()).isEqualTo(6_000L);
+        assertThat(to.getBalance()).isZero();
+    }
+}
@@ -0,0 +1,50 @@
+package com.karasov.transfer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrentLongHashMapTest {
+
+    @Test
+    void keepsRemainingKeysReachableAfterRemoval() {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>(16, 1);
+        for (long key = 1; key <= 1_000; key++) {
+            map.put(key, key);
+        }
+        for (long key = 1; key <= 1_000; key += 2) {
+            assertThat(map.remove(key)).isEqualTo(key);
+        }
+
+        assertThat(map.size()).isEqualTo(500);
+        for (long key = 1; key <= 1_000; key++) {
+            assertThat(map.get(key)).isEqualTo(key % 2 == 0 ? key : null);
+        }
+    }
+
+    @Test
+    void removesOnlyExpectedValue() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>(16);
+        String value = "value";
+        map.put(42L, value);
+
+        assertThat(map.remove(42L, new String("value"))).isFalse();
+        assertThat(map.remove(42L, value)).isTrue();
+        assertThat(map.get(42L)).isNull();
+    }
+
+    @Test
+    void removesMatchingValuesAndKeepsTheRestReachable() {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>(16, 2);
+        for (long key = 1; key <= 1_000; key++) {
+            map.put(key, key);
+        }
+
+        assertThat(map.removeIf(value -> value % 3 == 0)).isEqualTo(333);
+
+        assertThat(map.size()).isEqualTo(667);
+        for (long key = 1; key <= 1_000; key++) {
+            assertThat(map.get(key)).isEqualTo(key % 3 == 0 ? null : key);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.karasov.transfer.utils;
+
+import com.karasov.transfer.models.Currency;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FxRateTableTest {
+
+    @Test
+    void convertsWithFixedPointRateRoundingHalfUp() {
+        FxRateTable table = FxRateTable.parse(List.of("# rates", "", "USD=92.4512", " EUR = 100.5 "));
+
+        assertThat(table.toKopecks(Currency.USD, 100)).isEqualTo(9_245);
+        assertThat(table.toKopecks(Currency.USD, 1)).isEqualTo(92);
+        assertThat(table.toKopecks(Currency.EUR, 1)).isEqualTo(101);
+        assertThat(table.toKopecks(Currency.RUR, 12_345)).isEqualTo(12_345);
+        assertThat(table.supports(Currency.CNY)).isFalse();
+        assertThat(table.supports(null)).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidLines() {
+        assertThatThrownBy(() -> FxRateTable.parse(List.of("USD=-1"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FxRateTable.parse(List.of("XYZ=1"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FxRateTable.parse(List.of("RUR=2"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FxRateTable.parse(List.of("USD 92"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void knowsOnlyRoublesByDefault() {
+        assertThat(FxRateTable.ROUBLES_ONLY.supports(Currency.RUR)).isTrue();
+        assertThat(FxRateTable.ROUBLES_ONLY.supports(Currency.USD)).isFalse();
+    }
+}
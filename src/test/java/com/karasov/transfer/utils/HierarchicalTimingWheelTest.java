@@ -0,0 +1,66 @@
+package com.karasov.transfer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HierarchicalTimingWheelTest {
+
+    @Test
+    void firesItemsOnlyAfterDeadline() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 2, 3, 0);
+        List<String> expired = new ArrayList<>();
+        wheel.schedule("near", 25);
+        wheel.schedule("far", 5_000);
+        wheel.schedule("beyond", 100_000);
+
+        wheel.advance(20, expired::add);
+        assertThat(expired).isEmpty();
+
+        wheel.advance(30, expired::add);
+        assertThat(expired).containsExactly("near");
+
+        wheel.advance(4_990, expired::add);
+        assertThat(expired).containsExactly("near");
+
+        wheel.advance(5_000, expired::add);
+        assertThat(expired).containsExactly("near", "far");
+
+        wheel.advance(100_000, expired::add);
+        assertThat(expired).containsExactly("near", "far", "beyond");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void firesOverdueItemOnNextTick() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 2, 3, 1_000);
+        List<String> expired = new ArrayList<>();
+        wheel.schedule("overdue", 500);
+
+        wheel.advance(1_010, expired::add);
+        assertThat(expired).containsExactly("overdue");
+    }
+
+    @Test
+    void cancelledItemsLeaveWheelImmediately() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 2, 3, 0);
+        List<String> expired = new ArrayList<>();
+        HierarchicalTimingWheel.Timer<String> first = wheel.schedule("first", 25);
+        HierarchicalTimingWheel.Timer<String> middle = wheel.schedule("middle", 25);
+        wheel.schedule("last", 25);
+        HierarchicalTimingWheel.Timer<String> far = wheel.schedule("far", 5_000);
+
+        assertThat(wheel.cancel(middle)).isTrue();
+        assertThat(wheel.cancel(far)).isTrue();
+        assertThat(wheel.cancel(far)).isFalse();
+        assertThat(wheel.size()).isEqualTo(2);
+
+        wheel.advance(5_000, expired::add);
+        assertThat(expired).containsExactlyInAnyOrder("first", "last");
+        assertThat(wheel.cancel(first)).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+}
@@ -0,0 +1,32 @@
+package com.karasov.transfer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTest {
+
+    @Test
+    void roundsCommissionHalfUpToKopeck() {
+        assertThat(Money.commission(49)).isZero();
+        assertThat(Money.commission(50)).isEqualTo(1);
+        assertThat(Money.commission(10_000)).isEqualTo(100);
+        assertThat(Money.withCommission(12_345)).isEqualTo(12_468);
+    }
+
+    @Test
+    void rejectsOverflowAndFractionalKopecks() {
+        assertThatThrownBy(() -> Money.withCommission(Long.MAX_VALUE / 2)).isInstanceOf(ArithmeticException.class);
+        assertThat(Money.ofKopecks(100.5)).isEqualTo(Money.INVALID);
+        assertThat(Money.ofKopecks(-100)).isEqualTo(Money.INVALID);
+        assertThat(Money.ofKopecks(1e19)).isEqualTo(Money.INVALID);
+        assertThat(Money.ofKopecks(100)).isEqualTo(100);
+    }
+
+    @Test
+    void formatsRoublesWithTwoDecimals() {
+        assertThat(Money.format(123_405)).isEqualTo("1234.05");
+        assertThat(Money.format(-5)).isEqualTo("-0.05");
+    }
+}
@@ -0,0 +1,25 @@
+package com.karasov.transfer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SMSCodeGeneratorTest {
+
+    @Test
+    void generatesDigitCodesOfFixedLength() {
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(SMSCodeGenerator.generateVerificationSMSCode())
+                    .hasSize(SMSCodeGenerator.CODE_LENGTH)
+                    .containsOnlyDigits();
+        }
+    }
+
+    @Test
+    void matchesOnlyIdenticalCode() {
+        assertThat(SMSCodeGenerator.matches("012345", "012345")).isTrue();
+        assertThat(SMSCodeGenerator.matches("012345", "012346")).isFalse();
+        assertThat(SMSCodeGenerator.matches("012345", "01234")).isFalse();
+        assertThat(SMSCodeGenerator.matches("012345", null)).isFalse();
+    }
+}
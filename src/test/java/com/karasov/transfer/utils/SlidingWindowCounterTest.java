@@ -0,0 +1,37 @@
+package com.karasov.transfer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingWindowCounterTest {
+
+    private static final long WIDTH = 1_000;
+    private static final int BUCKETS = 10;
+
+    @Test
+    void limitsCountAndAmountWithinWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(BUCKETS);
+
+        assertThat(counter.tryAdd(0, 400, WIDTH, 3, 1_000)).isTrue();
+        assertThat(counter.tryAdd(WIDTH, 400, WIDTH, 3, 1_000)).isTrue();
+        assertThat(counter.tryAdd(2 * WIDTH, 300, WIDTH, 3, 1_000)).isFalse();
+        assertThat(counter.tryAdd(2 * WIDTH, 200, WIDTH, 3, 1_000)).isTrue();
+        assertThat(counter.tryAdd(3 * WIDTH, 0, WIDTH, 3, 1_000)).isFalse();
+
+        assertThat(counter.tryAdd(BUCKETS * WIDTH, 400, WIDTH, 3, 1_000)).isTrue();
+    }
+
+    @Test
+    void releasesRemovedEventAndBecomesIdleAfterWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(BUCKETS);
+
+        assertThat(counter.tryAdd(0, 1_000, WIDTH, 3, 1_000)).isTrue();
+        assertThat(counter.tryAdd(WIDTH, 1, WIDTH, 3, 1_000)).isFalse();
+        counter.remove(0, 1_000, WIDTH);
+        assertThat(counter.tryAdd(WIDTH, 1_000, WIDTH, 3, 1_000)).isTrue();
+
+        assertThat(counter.isIdle(BUCKETS * WIDTH, WIDTH)).isFalse();
+        assertThat(counter.isIdle((BUCKETS + 1) * WIDTH, WIDTH)).isTrue();
+    }
+}
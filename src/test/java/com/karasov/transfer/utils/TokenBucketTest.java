@@ -0,0 +1,27 @@
+package com.karasov.transfer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long INTERVAL = 100;
+    private static final long BURST = 3 * INTERVAL;
+
+    @Test
+    void allowsBurstThenRefillsAtFixedRate() {
+        long now = 1_000;
+        TokenBucket bucket = new TokenBucket(now);
+
+        assertThat(bucket.tryAcquire(now, INTERVAL, BURST)).isTrue();
+        assertThat(bucket.tryAcquire(now, INTERVAL, BURST)).isTrue();
+        assertThat(bucket.tryAcquire(now, INTERVAL, BURST)).isTrue();
+        assertThat(bucket.tryAcquire(now, INTERVAL, BURST)).isFalse();
+
+        assertThat(bucket.tryAcquire(now + INTERVAL - 1, INTERVAL, BURST)).isFalse();
+        assertThat(bucket.tryAcquire(now + INTERVAL, INTERVAL, BURST)).isTrue();
+        assertThat(bucket.isFull(now + INTERVAL)).isFalse();
+        assertThat(bucket.isFull(now + 4 * INTERVAL)).isTrue();
+    }
+}
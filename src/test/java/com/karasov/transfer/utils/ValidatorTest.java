@@ -0,0 +1,46 @@
+package com.karasov.transfer.utils;
+
+import com.karasov.transfer.models.Card;
+import com.karasov.transfer.models.Currency;
+import com.karasov.transfer.models.Request;
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ValidatorTest {
+
+    private static final DateTimeFormatter MMYY = DateTimeFormatter.ofPattern("MMyy");
+
+    @Test
+    void checksCardNumberFormatAndLuhnChecksum() {
+        assertThat(Validator.validateCardNumber("4111111111111111", true)).isTrue();
+        assertThat(Validator.validateCardNumber("4111111111111112", true)).isFalse();
+        assertThat(Validator.validateCardNumber("4111111111111112", false)).isTrue();
+        assertThat(Validator.validateCardNumber("411111111111111a", false)).isFalse();
+        assertThat(Validator.validateCardNumber("411111111111111", false)).isFalse();
+    }
+
+    @Test
+    void rejectsCardExpiringThisMonth() {
+        YearMonth now = YearMonth.now();
+        assertThat(Validator.validateExpireDate(now.plusMonths(1).format(MMYY))).isTrue();
+        assertThat(Validator.validateExpireDate(now.format(MMYY))).isFalse();
+        assertThat(Validator.validateExpireDate("1399")).isFalse();
+        assertThat(Validator.validateExpireDate("12/9")).isFalse();
+    }
+
+    @Test
+    void reportsFirstInvalidField() {
+        String validTill = YearMonth.now().plusYears(1).format(MMYY);
+        Request valid = new Request(new Card("4111111111111111", validTill, "123"), "5555555555554444", 1_000L, Currency.RUR);
+        Request badCvv = new Request(new Card("4111111111111111", validTill, "12"), "5555555555554444", 1_000L, Currency.RUR);
+        Request badCurrency = new Request(new Card("4111111111111111", validTill, "123"), "5555555555554444", 1_000L, Currency.of("XYZ"));
+
+        assertThat(Validator.validate(valid, true)).isEqualTo(ValidationResult.VALID);
+        assertThat(Validator.validate(badCvv, true)).isEqualTo(ValidationResult.CARD_FROM_CVV);
+        assertThat(Validator.validate(badCurrency, true)).isEqualTo(ValidationResult.AMOUNT_CURRENCY);
+    }
+}